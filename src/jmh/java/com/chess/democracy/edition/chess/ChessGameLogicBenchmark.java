@@ -0,0 +1,72 @@
+package com.chess.democracy.edition.chess;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks for the move validation paths the server runs on every ballot and turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessGameLogicBenchmark {
+
+    // A middlegame with castling, pins and en passant-relevant structure on both sides
+    private static final String MIDDLEGAME = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    private ChessGameLogic game;
+    private ChessPiece knight;
+    private ChessPiece bishop;
+
+    @Setup
+    public void setup() {
+        game = new ChessGameLogic(MIDDLEGAME);
+        knight = game.getBoard()[3][4]; // e5
+        bishop = game.getBoard()[6][3]; // d2
+    }
+
+    @Benchmark
+    public ChessGameLogic newGame() {
+        return new ChessGameLogic();
+    }
+
+    // Includes newGame; subtract it to get the cost of the four moves
+    @Benchmark
+    public ChessGameLogic movePieceOpening() {
+        ChessGameLogic opening = new ChessGameLogic();
+        opening.movePiece(6, 4, 4, 4); // e4
+        opening.movePiece(1, 4, 3, 4); // e5
+        opening.movePiece(7, 6, 5, 5); // Nf3
+        opening.movePiece(0, 1, 2, 2); // Nc6
+        return opening;
+    }
+
+    @Benchmark
+    public MoveStatus validateLegalMove() {
+        return game.checkMove(knight, 1, 5); // Nxf7
+    }
+
+    @Benchmark
+    public MoveStatus validateIllegalMove() {
+        return game.checkMove(bishop, 3, 2); // not a bishop move
+    }
+
+    @Benchmark
+    public boolean isKingInCheck() {
+        return game.isKingInCheck(PieceColor.WHITE);
+    }
+
+    @Benchmark
+    public boolean playerHasLegalMoves() {
+        return game.playerHasLegalMoves(PieceColor.WHITE);
+    }
+
+    @Benchmark
+    public ChessGameLogic cloneGame() throws CloneNotSupportedException {
+        return game.clone();
+    }
+}
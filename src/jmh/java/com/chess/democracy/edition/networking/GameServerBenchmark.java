@@ -0,0 +1,98 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.PieceColor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the broadcast path of {@link GameServer}: the time from one client sending a chat line
+ * until every client in the same game has received the relayed copy.
+ *
+ * <p>CHAT is dropped for a client over its high watermark, so each wait gives up after
+ * {@link #TIMEOUT_SECONDS} instead of hanging the run on a lost copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameServerBenchmark {
+
+    private static final int GAME_ID = 1;
+    private static final String MESSAGE = "e2e4 please";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Param({"10", "60"})
+    public int clients;
+
+    @Param({"SELECTOR", "THREAD_PER_CONNECTION"})
+    public ServerMode mode;
+
+    private GameServer server;
+    private final List<GameClient> gameClients = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private GameClient sender;
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException, InterruptedException {
+        server = GameServer.getInstance("127.0.0.1", 0, mode);
+        // Keep voting deadlines from broadcasting during the measurement
+        server.setTurnDuration(1, TimeUnit.DAYS);
+        CountDownLatch joined = new CountDownLatch(clients);
+        FrameHandler counter = new FrameHandler() {
+            // Join announcements are chats too; only the measured line is counted
+            @Override
+            public void onChat(String sender, String text) {
+                if (MESSAGE.equals(text)) {
+                    received.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onSession(long sessionToken, int sequence) {
+                joined.countDown();
+            }
+        };
+        for (int i = 0; i < clients; i++) {
+            GameClient client = new GameClient("127.0.0.1", server.getPort(), counter);
+            client.start();
+            client.hello(GAME_ID, i % 2 == 0 ? PieceColor.WHITE : PieceColor.BLACK, "bot" + i);
+            gameClients.add(client);
+        }
+        sender = gameClients.get(0);
+        // The server answers every HELLO with the client's session once it has joined the room
+        if (!joined.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(joined.getCount() + " of " + clients + " clients never joined");
+        }
+    }
+
+    @Benchmark
+    public long broadcastChatMessage() {
+        expected += clients;
+        sender.sendChat(MESSAGE);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (received.get() < expected) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException((expected - received.get()) + " copies of the chat never arrived");
+            }
+            Thread.onSpinWait();
+        }
+        return expected;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        for (GameClient client : gameClients) {
+            client.close();
+        }
+        server.stopServer();
+    }
+}
@@ -1,6 +1,10 @@
 package com.chess.democracy.edition;
 
 import com.chess.democracy.edition.chess.*;
+import com.chess.democracy.edition.networking.FrameHandler;
+import com.chess.democracy.edition.networking.GameClient;
+import com.chess.democracy.edition.networking.VoteProgress;
+import com.chess.democracy.edition.networking.VoteStatus;
 import javafx.animation.*;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
@@ -48,6 +52,8 @@ public class ChessboardController extends LoggedInController {
     @FXML
     private Label gameIText;
     @FXML
+    private ListView<String> voteProgressList;
+    @FXML
     private TextField inputFieldChat;
     @FXML
     private Button sendButton;
@@ -56,12 +62,21 @@ public class ChessboardController extends LoggedInController {
 
     private int gameID;
     private ChessGameLogic chessGame;
-
-    // Chat-related fields
-    private Socket chatSocket;
-    private PrintWriter chatOut;
-    private BufferedReader chatIn;
-    private ExecutorService chatExecutor;
+    private PieceColor team;
+
+    // Move chosen by dragging a piece while connected, sent to the server with the vote button
+    private int pendingBallot = Move.NONE;
+    // Turn announced by the server's last TURN_OPEN frame; ballots must name it
+    private int currentTurn = -1;
+    // Server turn of the local position, set by snapshots and advanced by each delta
+    private int positionTurn = -1;
+    // Most voted moves of the open turn, as the server last reported them
+    private final VoteProgress voteProgress = new VoteProgress();
+
+    // Connection to the game server, carrying chat, ballots and the server's game state
+    private GameClient gameClient;
+    // Set once the player leaves the game, so a closed connection is not reopened
+    private boolean leavingGame;
 
     // Server settings
     private String serverAddress = "localhost"; // Default value
@@ -84,6 +99,9 @@ public class ChessboardController extends LoggedInController {
     private static final Color LIGHT_TILE_COLOR = Color.WHITE;
     private static final Color DARK_TILE_COLOR = Color.web("#0f8aac");
     private static final Font LABEL_FONT = Font.font("Berlin Sans FB Demi Bold", FontWeight.BOLD, 16.0);
+    // A dropped connection is retried this often, within the server's reconnect grace
+    private static final long RECONNECT_DELAY_MILLIS = 2000;
+    private static final int MAX_RECONNECT_ATTEMPTS = 5;
 
     // Setter for gameID
     public void setGameID(int gameID) {
@@ -100,13 +118,6 @@ public class ChessboardController extends LoggedInController {
         addChessPieces();
         loadSoundEffects();
         playGameStartSound();
-
-        // Connect to chat server
-        connectToChatServer();
-
-        // Start listening for incoming chat messages
-        chatExecutor = Executors.newSingleThreadExecutor();
-        chatExecutor.execute(this::listenForChatMessages);
     }
 
     private void loadSoundEffects() {
@@ -152,9 +163,15 @@ public class ChessboardController extends LoggedInController {
         // Get the user's team
         String team = DBUtility.getUserTeam(gameID, DBUtility.CurrentSignedInUser.getUserID());
         teamName.setText("Team " + capitalizeFirstLetter(team));
+        if (team != null) {
+            this.team = "black".equalsIgnoreCase(team) ? PieceColor.BLACK : PieceColor.WHITE;
+        }
 
         // Display waiting message
         updateGameMessage("Waiting for other players...", false);
+
+        // Connect to the game server now that the HELLO frame can name the game
+        connectToChatServer();
     }
 
     // Utility method to capitalize the first letter of the team name
@@ -192,48 +209,196 @@ public class ChessboardController extends LoggedInController {
 
     private void connectToChatServer() {
         try {
-            chatSocket = new Socket(serverAddress, serverPort);
-            chatOut = new PrintWriter(chatSocket.getOutputStream(), true);
-            chatIn = new BufferedReader(new InputStreamReader(chatSocket.getInputStream()));
+            gameClient = new GameClient(serverAddress, serverPort, new ServerFrameHandler(),
+                    Platform::runLater, GameClient.DEFAULT_QUEUE_CAPACITY);
+            gameClient.start();
 
-            // Send initial info: gameID and userName
-            String initInfo = gameID + ":" + DBUtility.CurrentSignedInUser.getName();
-            chatOut.println(initInfo);
+            // Send initial info: gameID, team and userName
+            gameClient.hello(gameID, team, DBUtility.CurrentSignedInUser.getName());
         } catch (IOException e) {
             System.err.println("Failed to connect to chat server: " + e.getMessage());
             updateGameMessage("Failed to connect to chat server.", false);
+            gameClient = null;
         }
     }
+
+    // While connected the server owns the game and moves are decided by vote
+    private boolean isConnected() {
+        return gameClient != null && gameClient.isConnected();
+    }
+
     // Optional method to set server details if needed
     public void setServerDetails(String ip, int port) {
         this.serverAddress = ip;
         this.serverPort = port;
     }
 
-    private void listenForChatMessages() {
-        String message;
-        try {
-            while ((message = chatIn.readLine()) != null) {
-                String finalMessage = message;
-                Platform.runLater(() -> outputFieldChat.getItems().add(finalMessage));
+    // Called on the FX thread; the client hands over frames in batches through Platform.runLater
+    private class ServerFrameHandler implements FrameHandler {
+        @Override
+        public void onChat(String sender, String text) {
+            outputFieldChat.getItems().add(sender + ": " + text);
+        }
+
+        @Override
+        public void onSnapshot(int turn, String fen) {
+            // Periodic snapshots of a position already in sync would only restart the board
+            if (turn == positionTurn && fen.equals(chessGame.toFen())) {
+                return;
+            }
+            if (loadServerPosition(fen)) {
+                positionTurn = turn;
             }
-        } catch (IOException e) {
-            System.err.println("Error reading from chat server: " + e.getMessage());
-        } finally {
-            closeChatConnection();
         }
-    }
 
-    private void closeChatConnection() {
-        try {
-            if (chatSocket != null && !chatSocket.isClosed()) {
-                chatSocket.close();
+        @Override
+        public void onStateDelta(int turn, int move, long positionKey) {
+            // A delta only applies on top of the position it was made from
+            if (turn != positionTurn + 1 || !applyServerMove(move) || chessGame.getZobristKey() != positionKey) {
+                positionTurn = -1;
+                gameClient.requestSnapshot();
+                return;
+            }
+            positionTurn = turn;
+        }
+
+        @Override
+        public void onTurnOpen(int turn, PieceColor votingTeam, long millisRemaining) {
+            currentTurn = turn;
+            pendingBallot = Move.NONE;
+            // Reconnecting repeats the open turn, whose standing must be kept
+            if (turn != voteProgress.getTurn()) {
+                voteProgress.reset(turn);
+                showVoteProgress();
             }
-            if (chatExecutor != null && !chatExecutor.isShutdown()) {
-                chatExecutor.shutdownNow();
+            updateGameMessage("Voting is open for Team " + votingTeam + ", "
+                    + (millisRemaining / 1000) + " seconds to vote.", false);
+        }
+
+        @Override
+        public void onVoteProgress(int turn, int revision, int voters, boolean full, int[] moves, int[] votes) {
+            if (voteProgress.apply(turn, revision, voters, full, moves, votes)) {
+                showVoteProgress();
             }
-        } catch (IOException e) {
-            // Ignore
+        }
+
+        @Override
+        public void onMoveCommit(int turn, int move, int votes) {
+            String message = "System: " + Move.toString(move) + " won the vote with " + votes
+                    + (votes == 1 ? " vote." : " votes.");
+            outputFieldChat.getItems().add(message);
+        }
+
+        @Override
+        public void onVote(int turn, int move, VoteStatus status) {
+            if (status != null) {
+                updateGameMessage(status.getMessage(), false);
+            }
+        }
+
+        @Override
+        public void onDisconnected() {
+            // An earlier connection ending after it was replaced is not news
+            if (leavingGame || gameClient == null || gameClient.isConnected()) {
+                return;
+            }
+            updateGameMessage("Connection to the game server lost, reconnecting...", false);
+            reconnectToServer(gameClient, 1);
+        }
+    }
+
+    // Resumes the session in the background; the server replays what was missed in the meantime
+    private void reconnectToServer(GameClient lost, int attempt) {
+        Thread.ofVirtual().name("game-reconnect").start(() -> {
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+                GameClient client = lost.reconnect();
+                Platform.runLater(() -> {
+                    if (leavingGame) {
+                        client.close();
+                        return;
+                    }
+                    gameClient = client;
+                    // A delta that failed before the swap could not ask the new connection for a snapshot
+                    if (positionTurn == -1) {
+                        gameClient.requestSnapshot();
+                    }
+                    updateGameMessage("Reconnected to the game server.", false);
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    if (leavingGame) {
+                        return;
+                    }
+                    if (attempt < MAX_RECONNECT_ATTEMPTS) {
+                        reconnectToServer(lost, attempt + 1);
+                    } else {
+                        updateGameMessage("Disconnected from the game server.", false);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private void showVoteProgress() {
+        voteProgressList.getItems().clear();
+        for (int move : voteProgress.getMoves()) {
+            int votes = voteProgress.getVotes(move);
+            voteProgressList.getItems().add(Move.toString(move) + ": " + votes + (votes == 1 ? " vote" : " votes"));
+        }
+        if (voteProgress.getVoters() > 0) {
+            voteProgressList.getItems().add(voteProgress.getVoters() + " voted so far");
+        }
+    }
+
+    // Replaces the local game with the server's position, sent when joining
+    private boolean loadServerPosition(String fen) {
+        try {
+            chessGame = new ChessGameLogic(fen);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid position from server: " + e.getMessage());
+            return false;
+        }
+        pendingBallot = Move.NONE;
+        refreshPieces();
+        switchTurn();
+        return true;
+    }
+
+    // Plays a move the server committed at the end of a voting round
+    private boolean applyServerMove(int move) {
+        MoveResult moveResult = chessGame.playMove(move);
+        if (!moveResult.isSuccess()) {
+            System.err.println("Could not apply move from server: " + Move.toString(move));
+            return false;
+        }
+        pendingBallot = Move.NONE;
+
+        MoveDetails moveDetails = chessGame.getLastMoveDetails();
+        ChessPiece capturedPiece = moveDetails.getCapturedPiece();
+        if (capturedPiece != null) {
+            GridPane scoreGrid = (capturedPiece.getColor() == PieceColor.WHITE) ? scoreGridTeamBlack : scoreGridTeamWhite;
+            addCapturedPieceToScoreGrid(capturedPiece, scoreGrid);
+        }
+        refreshPieces();
+
+        if (moveDetails.isCastlingOccurred()) {
+            playCastlingSound();
+        } else if (capturedPiece != null) {
+            playCaptureSound();
+        } else {
+            playLegalMoveSound();
+        }
+        switchTurn();
+        return true;
+    }
+
+    private void closeChatConnection() {
+        leavingGame = true;
+        if (gameClient != null) {
+            gameClient.close();
         }
     }
 
@@ -304,6 +469,14 @@ public class ChessboardController extends LoggedInController {
         }
     }
 
+    // Rebuilds every piece image from the game state
+    private void refreshPieces() {
+        for (Node node : chessGrid.getChildren()) {
+            ((StackPane) node).getChildren().removeIf(child -> child instanceof ImageView);
+        }
+        addChessPieces();
+    }
+
     private void addPiece(ChessPiece chessPiece) {
         String imagePath = getPieceImagePath(chessPiece);
         ImageView pieceImageView = createPieceImageView(new Image(imagePath), chessPiece);
@@ -355,7 +528,7 @@ public class ChessboardController extends LoggedInController {
             return;
         }
         ChessPiece chessPiece = (ChessPiece) pieceImageView.getUserData();
-        if (!chessGame.isCorrectTurn(chessPiece)) {
+        if (!chessGame.isCorrectTurn(chessPiece) || (isConnected() && team != null && chessPiece.getColor() != team)) {
             updateGameMessage("It's not your team's turn!", false);
             return;
         }
@@ -393,6 +566,13 @@ public class ChessboardController extends LoggedInController {
                 int startRow = movingPiece.getRow();
                 int startCol = movingPiece.getCol();
 
+                if (isConnected()) {
+                    chooseBallot(movingPiece, endRow, endCol);
+                    event.setDropCompleted(false);
+                    event.consume();
+                    return;
+                }
+
                 MoveResult moveResult = chessGame.movePiece(startRow, startCol, endRow, endCol);
                 if (moveResult.isSuccess()) {
                     movePieceImageView(sourcePieceImageView, startRow, startCol, endRow, endCol);
@@ -407,7 +587,7 @@ public class ChessboardController extends LoggedInController {
                         playLegalMoveSound();
                     }
 
-                    if (chessGame.getLastMoveDetails().isPawnPromoted()) {
+                    if (moveResult.getStatus() == MoveStatus.PROMOTION_PENDING) {
                         promptPawnPromotion(movingPiece.getColor());
                     } else {
                         switchTurn();
@@ -418,7 +598,7 @@ public class ChessboardController extends LoggedInController {
                     updateGameMessage(moveResult.getErrorMessage(), false);
                     playIllegalMoveSound();
 
-                    if (moveResult.shouldAnimateKing()) {
+                    if (moveResult.getStatus() == MoveStatus.LEAVES_KING_IN_CHECK) {
                         ChessPiece king = chessGame.findKing(movingPiece.getColor());
                         animateKingInCheck(king);
                     }
@@ -430,6 +610,27 @@ public class ChessboardController extends LoggedInController {
     }
 
 
+    // Checks a dragged move locally and keeps it as the ballot to send with the vote button
+    private void chooseBallot(ChessPiece movingPiece, int endRow, int endCol) {
+        MoveStatus status = chessGame.checkMove(movingPiece, endRow, endCol);
+        if (!status.isSuccess()) {
+            updateGameMessage(status.getMessage(), false);
+            playIllegalMoveSound();
+            if (status == MoveStatus.LEAVES_KING_IN_CHECK) {
+                animateKingInCheck(chessGame.findKing(movingPiece.getColor()));
+            }
+            return;
+        }
+
+        // Promotions are voted as a queen
+        int move = chessGame.findLegalMove(movingPiece.getRow(), movingPiece.getCol(), endRow, endCol, null);
+        if (move == Move.NONE) {
+            move = chessGame.findLegalMove(movingPiece.getRow(), movingPiece.getCol(), endRow, endCol, PieceType.QUEEN);
+        }
+        pendingBallot = move;
+        updateGameMessage("Selected " + Move.toString(move) + ". Press Vote to cast your ballot.", false);
+    }
+
     private void promptPawnPromotion(PieceColor color) {
         chessGrid.setDisable(true);
         updateGameMessage("Pawn promotion! Choose a piece: 1 - Queen, 2 - Rook, 3 - Bishop, 4 - Knight", false);
@@ -458,28 +659,27 @@ public class ChessboardController extends LoggedInController {
             updateGameMessage("Error: No pawn to promote at the expected position.", false);
             return;
         }
-        PieceColor color = pawn.getColor();
 
-        ChessPiece newPiece;
+        PieceType promotionType;
         switch (choice) {
             case 1:
-                newPiece = new Queen(color, row, col);
+                promotionType = PieceType.QUEEN;
                 break;
             case 2:
-                newPiece = new Rook(color, row, col);
+                promotionType = PieceType.ROOK;
                 break;
             case 3:
-                newPiece = new Bishop(color, row, col);
+                promotionType = PieceType.BISHOP;
                 break;
             case 4:
-                newPiece = new Knight(color, row, col);
+                promotionType = PieceType.KNIGHT;
                 break;
             default:
                 return;
         }
 
         // Replace the pawn with the new piece on the board
-        chessGame.getBoard()[row][col] = newPiece;
+        ChessPiece newPiece = chessGame.promotePawn(promotionType);
 
         // Remove the pawn's ImageView from the UI
         ImageView pieceImageView = getPieceImageViewAt(row, col);
@@ -491,8 +691,7 @@ public class ChessboardController extends LoggedInController {
         // Add the new piece's ImageView to the UI
         addPiece(newPiece);
 
-        // Reset the promotion flag and re-enable the chessboard
-        chessGame.getLastMoveDetails().setPawnPromoted(false);
+        // Re-enable the chessboard
         chessGrid.setDisable(false);
 
         // Switch turns now that promotion is complete
@@ -694,7 +893,7 @@ public class ChessboardController extends LoggedInController {
         } else {
             // Existing code for switching turns
             PieceColor currentPlayerColor = chessGame.isWhiteTurn() ? PieceColor.WHITE : PieceColor.BLACK;
-            if (chessGame.isKingInCheck(currentPlayerColor)) {
+            if (chessGame.isInCheck()) {
                 updateGameMessage("Your king is in check! Protect your king.", false);
                 ChessPiece king = chessGame.findKing(currentPlayerColor);
                 animateKingInCheck(king);
@@ -719,6 +918,7 @@ public class ChessboardController extends LoggedInController {
 
         // Remove the user from the game
         DBUtility.removePlayerFromGame(gameID, userID);
+        closeChatConnection();
 
         // Check if the current user is the creator of the game
         if (DBUtility.isUserGameCreator(gameID, userID)) {
@@ -732,7 +932,17 @@ public class ChessboardController extends LoggedInController {
 
     // Action methods for vote
     public void vote(ActionEvent event) {
-        // Implement vote functionality here
+        if (!isConnected()) {
+            updateGameMessage("Voting needs a connection to the game server.", false);
+            return;
+        }
+        if (pendingBallot == Move.NONE) {
+            updateGameMessage("Drag a piece to choose your move, then press Vote.", false);
+            return;
+        }
+        if (!gameClient.sendVote(currentTurn, pendingBallot)) {
+            updateGameMessage("Could not send your vote, please try again.", false);
+        }
     }
 
 
@@ -758,8 +968,8 @@ public class ChessboardController extends LoggedInController {
     // Action methods for send
     public void send(ActionEvent event) {
         String messageContent = inputFieldChat.getText().trim();
-        if (!messageContent.isEmpty()) {
-            chatOut.println(messageContent);
+        if (!messageContent.isEmpty() && isConnected()) {
+            gameClient.sendChat(messageContent);
             inputFieldChat.clear();
         }
     }
@@ -6,20 +6,24 @@ public class Bishop extends ChessPiece {
         super(color, row, col);
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.BISHOP;
+    }
+
     @Override
     public boolean isValidMove(int endRow, int endCol, ChessGameLogic game) {
         if (isSamePosition(endRow, endCol)) {
             return false; // Can't move to the same square
         }
 
-        if (Math.abs(this.getRow() - endRow) != Math.abs(this.getCol() - endCol)) {
-            return false;
-        }
-        return game.isPathClear(this.getRow(), this.getCol(), endRow, endCol);
+        return canAttackSquare(endRow, endCol, game);
     }
 
     @Override
     public boolean canAttackSquare(int endRow, int endCol, ChessGameLogic game) {
-        return isValidMove(endRow, endCol, game);
+        int square = BitboardPosition.square(this.getRow(), this.getCol());
+        long attacks = Attacks.bishopAttacks(square, game.getPosition().getOccupied());
+        return (attacks & BitboardPosition.bit(BitboardPosition.square(endRow, endCol))) != 0;
     }
 }
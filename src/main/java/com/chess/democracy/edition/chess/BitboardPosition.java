@@ -0,0 +1,638 @@
+package com.chess.democracy.edition.chess;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a chess position: one {@code long} per piece type and color.
+ * Squares are indexed {@code row * 8 + col} with row 0 being Black's back rank, so a square
+ * maps directly onto the row/column coordinates used by {@link ChessPiece}.
+ */
+public class BitboardPosition {
+    public static final int NO_SQUARE = -1;
+
+    // Castling rights bits
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+    public static final int ALL_CASTLING_RIGHTS = 15;
+
+    private static final int PIECE_TYPE_COUNT = 6;
+    private static final byte EMPTY = -1;
+    private static final int INITIAL_UNDO_CAPACITY = 256;
+
+    // Rights that survive a move touching a given square (king and rook home squares clear theirs)
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_MASK, ALL_CASTLING_RIGHTS);
+        CASTLING_MASK[square(0, 0)] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[square(0, 7)] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[square(0, 4)] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[square(7, 0)] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[square(7, 7)] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[square(7, 4)] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+    }
+
+    // Indexed by color ordinal * 6 + piece type ordinal
+    private final long[] pieces = new long[12];
+    private final long[] colorOccupancy = new long[2];
+    private long occupied;
+    // Piece index per square for constant-time lookups, EMPTY when vacant
+    private final byte[] mailbox = new byte[64];
+
+    private boolean whiteToMove;
+    private int castlingRights;
+    private int enPassantSquare;
+
+    // Zobrist key, updated incrementally by every change to the fields above
+    private long zobristKey;
+
+    // Check state of the side to move, recomputed once per made move and restored on unmake:
+    // the enemy pieces giving check and the own pieces pinned to the king
+    private long checkers;
+    private long pinned;
+    private boolean checkStateDirty = true;
+
+    // Undo stack, one record per made move: the move and the state it cannot be recomputed from,
+    // packed as captured piece index + 1 (bits 0-3), castling rights (bits 4-7) and en passant square + 1 (bits 8-14)
+    private int[] undoMoves = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoStates = new int[INITIAL_UNDO_CAPACITY];
+    private long[] undoKeys = new long[INITIAL_UNDO_CAPACITY];
+    private long[] undoCheckers = new long[INITIAL_UNDO_CAPACITY];
+    private long[] undoPinned = new long[INITIAL_UNDO_CAPACITY];
+    private int ply;
+
+    public BitboardPosition() {
+        clear();
+    }
+
+    // Final because the constructor calls it
+    public final void clear() {
+        Arrays.fill(pieces, 0L);
+        Arrays.fill(colorOccupancy, 0L);
+        Arrays.fill(mailbox, EMPTY);
+        occupied = 0L;
+        whiteToMove = true;
+        castlingRights = 0;
+        enPassantSquare = NO_SQUARE;
+        zobristKey = 0L;
+        checkStateDirty = true;
+        ply = 0;
+    }
+
+    public void setupInitialPosition() {
+        clear();
+        PieceType[] backRow = {
+                PieceType.ROOK, PieceType.KNIGHT, PieceType.BISHOP, PieceType.QUEEN,
+                PieceType.KING, PieceType.BISHOP, PieceType.KNIGHT, PieceType.ROOK
+        };
+        for (int col = 0; col < 8; col++) {
+            putPiece(backRow[col], PieceColor.BLACK, square(0, col));
+            putPiece(PieceType.PAWN, PieceColor.BLACK, square(1, col));
+            putPiece(PieceType.PAWN, PieceColor.WHITE, square(6, col));
+            putPiece(backRow[col], PieceColor.WHITE, square(7, col));
+        }
+        setCastlingRights(ALL_CASTLING_RIGHTS);
+    }
+
+    /**
+     * Sets up the position described by a FEN string. The move counters are accepted but not tracked.
+     *
+     * @param fen the position in Forsyth-Edwards Notation.
+     * @throws IllegalArgumentException if the FEN cannot be parsed.
+     */
+    public void setupFromFen(String fen) {
+        clear();
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Incomplete FEN: " + fen);
+        }
+
+        int row = 0;
+        int col = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                row++;
+                col = 0;
+            } else if (Character.isDigit(c)) {
+                col += c - '0';
+            } else {
+                if (row > 7 || col > 7) {
+                    throw new IllegalArgumentException("Invalid FEN placement: " + fields[0]);
+                }
+                PieceColor color = Character.isUpperCase(c) ? PieceColor.WHITE : PieceColor.BLACK;
+                putPiece(pieceTypeForSymbol(Character.toLowerCase(c)), color, square(row, col));
+                col++;
+            }
+        }
+
+        setSideToMove("b".equals(fields[1]) ? PieceColor.BLACK : PieceColor.WHITE);
+
+        int rights = 0;
+        for (char c : fields[2].toCharArray()) {
+            switch (c) {
+                case 'K':
+                    rights |= WHITE_KINGSIDE;
+                    break;
+                case 'Q':
+                    rights |= WHITE_QUEENSIDE;
+                    break;
+                case 'k':
+                    rights |= BLACK_KINGSIDE;
+                    break;
+                case 'q':
+                    rights |= BLACK_QUEENSIDE;
+                    break;
+                default:
+                    break;
+            }
+        }
+        setCastlingRights(rights);
+
+        if (!"-".equals(fields[3])) {
+            int epCol = fields[3].charAt(0) - 'a';
+            int epRow = '8' - fields[3].charAt(1);
+            setEnPassantSquare(square(epRow, epCol));
+        }
+    }
+
+    /**
+     * Describes the position in Forsyth-Edwards Notation. Move counters are not tracked,
+     * so the halfmove clock and fullmove number are always written as "0 1".
+     *
+     * @return the position as a FEN string.
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int square = square(row, col);
+                if (mailbox[square] == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char symbol = symbolForPieceType(getPieceType(square));
+                fen.append(getPieceColor(square) == PieceColor.WHITE ? Character.toUpperCase(symbol) : symbol);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(whiteToMove ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & WHITE_KINGSIDE) != 0) fen.append('K');
+            if ((castlingRights & WHITE_QUEENSIDE) != 0) fen.append('Q');
+            if ((castlingRights & BLACK_KINGSIDE) != 0) fen.append('k');
+            if ((castlingRights & BLACK_QUEENSIDE) != 0) fen.append('q');
+        }
+
+        fen.append(' ');
+        if (enPassantSquare == NO_SQUARE) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + col(enPassantSquare))).append((char) ('8' - row(enPassantSquare)));
+        }
+        return fen.append(" 0 1").toString();
+    }
+
+    private static char symbolForPieceType(PieceType type) {
+        return type == PieceType.KNIGHT ? 'n' : Character.toLowerCase(type.name().charAt(0));
+    }
+
+    private static PieceType pieceTypeForSymbol(char symbol) {
+        switch (symbol) {
+            case 'p':
+                return PieceType.PAWN;
+            case 'n':
+                return PieceType.KNIGHT;
+            case 'b':
+                return PieceType.BISHOP;
+            case 'r':
+                return PieceType.ROOK;
+            case 'q':
+                return PieceType.QUEEN;
+            case 'k':
+                return PieceType.KING;
+            default:
+                throw new IllegalArgumentException("Invalid FEN piece: " + symbol);
+        }
+    }
+
+    public void copyFrom(BitboardPosition other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        System.arraycopy(other.colorOccupancy, 0, colorOccupancy, 0, colorOccupancy.length);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, mailbox.length);
+        occupied = other.occupied;
+        whiteToMove = other.whiteToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        zobristKey = other.zobristKey;
+        checkers = other.checkers;
+        pinned = other.pinned;
+        checkStateDirty = other.checkStateDirty;
+        if (undoMoves.length < other.ply) {
+            undoMoves = new int[other.undoMoves.length];
+            undoStates = new int[other.undoStates.length];
+            undoKeys = new long[other.undoKeys.length];
+            undoCheckers = new long[other.undoCheckers.length];
+            undoPinned = new long[other.undoPinned.length];
+        }
+        System.arraycopy(other.undoMoves, 0, undoMoves, 0, other.ply);
+        System.arraycopy(other.undoStates, 0, undoStates, 0, other.ply);
+        System.arraycopy(other.undoKeys, 0, undoKeys, 0, other.ply);
+        System.arraycopy(other.undoCheckers, 0, undoCheckers, 0, other.ply);
+        System.arraycopy(other.undoPinned, 0, undoPinned, 0, other.ply);
+        ply = other.ply;
+    }
+
+    // Square helpers
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static int row(int square) {
+        return square >> 3;
+    }
+
+    public static int col(int square) {
+        return square & 7;
+    }
+
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    private static int pieceIndex(PieceType type, PieceColor color) {
+        return color.ordinal() * PIECE_TYPE_COUNT + type.ordinal();
+    }
+
+    // Getters
+    public long getPieces(PieceType type, PieceColor color) {
+        return pieces[pieceIndex(type, color)];
+    }
+
+    public long getOccupancy(PieceColor color) {
+        return colorOccupancy[color.ordinal()];
+    }
+
+    public long getOccupied() {
+        return occupied;
+    }
+
+    public boolean isEmpty(int square) {
+        return mailbox[square] == EMPTY;
+    }
+
+    public PieceType getPieceType(int square) {
+        int piece = mailbox[square];
+        return piece == EMPTY ? null : PieceType.fromIndex(piece % PIECE_TYPE_COUNT);
+    }
+
+    public PieceColor getPieceColor(int square) {
+        int piece = mailbox[square];
+        if (piece == EMPTY) {
+            return null;
+        }
+        return piece < PIECE_TYPE_COUNT ? PieceColor.WHITE : PieceColor.BLACK;
+    }
+
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
+
+    public PieceColor getSideToMove() {
+        return whiteToMove ? PieceColor.WHITE : PieceColor.BLACK;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    /**
+     * Computes the Zobrist key from scratch, for verifying the incrementally maintained one.
+     *
+     * @return the key of the current position.
+     */
+    public long computeZobristKey() {
+        long key = 0L;
+        for (int square = 0; square < 64; square++) {
+            if (mailbox[square] != EMPTY) {
+                key ^= Zobrist.piece(mailbox[square], square);
+            }
+        }
+        key ^= Zobrist.castling(castlingRights);
+        key ^= Zobrist.enPassant(enPassantSquare);
+        if (!whiteToMove) {
+            key ^= Zobrist.blackToMove();
+        }
+        return key;
+    }
+
+    // Setters for the state that is not part of the piece placement
+    public void setSideToMove(PieceColor color) {
+        if (whiteToMove != (color == PieceColor.WHITE)) {
+            whiteToMove = !whiteToMove;
+            zobristKey ^= Zobrist.blackToMove();
+            checkStateDirty = true;
+        }
+    }
+
+    public void setCastlingRights(int castlingRights) {
+        zobristKey ^= Zobrist.castling(this.castlingRights) ^ Zobrist.castling(castlingRights);
+        this.castlingRights = castlingRights;
+    }
+
+    public void setEnPassantSquare(int enPassantSquare) {
+        zobristKey ^= Zobrist.enPassant(this.enPassantSquare) ^ Zobrist.enPassant(enPassantSquare);
+        this.enPassantSquare = enPassantSquare;
+    }
+
+    // Number of moves on the undo stack
+    public int getPly() {
+        return ply;
+    }
+
+    public int getLastMove() {
+        return ply == 0 ? Move.NONE : undoMoves[ply - 1];
+    }
+
+    // Enemy pieces giving check to the side to move
+    public long getCheckers() {
+        refreshCheckState();
+        return checkers;
+    }
+
+    // Pieces of the side to move pinned against their own king
+    public long getPinned() {
+        refreshCheckState();
+        return pinned;
+    }
+
+    public boolean isInCheck() {
+        return getCheckers() != 0;
+    }
+
+    private void refreshCheckState() {
+        if (!checkStateDirty) {
+            return;
+        }
+        PieceColor color = getSideToMove();
+        int kingSquare = getKingSquare(color);
+        if (kingSquare == NO_SQUARE) {
+            checkers = 0L;
+            pinned = 0L;
+        } else {
+            checkers = attackersTo(kingSquare, opposite(color), occupied);
+            pinned = pinnedPieces(color);
+        }
+        checkStateDirty = false;
+    }
+
+    public int getKingSquare(PieceColor color) {
+        long king = getPieces(PieceType.KING, color);
+        return king == 0 ? NO_SQUARE : Long.numberOfTrailingZeros(king);
+    }
+
+    // Piece placement
+    public void putPiece(PieceType type, PieceColor color, int square) {
+        putPiece(pieceIndex(type, color), square);
+    }
+
+    private void putPiece(int index, int square) {
+        long bit = bit(square);
+        pieces[index] |= bit;
+        colorOccupancy[index / PIECE_TYPE_COUNT] |= bit;
+        occupied |= bit;
+        mailbox[square] = (byte) index;
+        zobristKey ^= Zobrist.piece(index, square);
+        checkStateDirty = true;
+    }
+
+    public void removePiece(int square) {
+        int index = mailbox[square];
+        if (index == EMPTY) {
+            return;
+        }
+        long bit = bit(square);
+        pieces[index] &= ~bit;
+        colorOccupancy[index / PIECE_TYPE_COUNT] &= ~bit;
+        occupied &= ~bit;
+        mailbox[square] = EMPTY;
+        zobristKey ^= Zobrist.piece(index, square);
+        checkStateDirty = true;
+    }
+
+    private void relocatePiece(int from, int to) {
+        int index = mailbox[from];
+        long fromTo = bit(from) | bit(to);
+        pieces[index] ^= fromTo;
+        colorOccupancy[index / PIECE_TYPE_COUNT] ^= fromTo;
+        occupied ^= fromTo;
+        mailbox[to] = (byte) index;
+        mailbox[from] = EMPTY;
+        zobristKey ^= Zobrist.piece(index, from) ^ Zobrist.piece(index, to);
+        checkStateDirty = true;
+    }
+
+    /**
+     * Plays a legal move produced by the {@link MoveGenerator}, including captures, en passant,
+     * castling and promotion, and pushes an undo record so it can be taken back with {@link #unmakeMove()}.
+     *
+     * @param move the {@link Move}-encoded move.
+     */
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int piece = mailbox[from];
+        int colorOffset = piece - piece % PIECE_TYPE_COUNT;
+
+        int capturedSquare = to;
+        if (Move.isEnPassant(move)) {
+            capturedSquare = whiteToMove ? to + 8 : to - 8;
+        }
+        int captured = mailbox[capturedSquare];
+
+        if (ply == undoMoves.length) {
+            undoMoves = Arrays.copyOf(undoMoves, ply * 2);
+            undoStates = Arrays.copyOf(undoStates, ply * 2);
+            undoKeys = Arrays.copyOf(undoKeys, ply * 2);
+            undoCheckers = Arrays.copyOf(undoCheckers, ply * 2);
+            undoPinned = Arrays.copyOf(undoPinned, ply * 2);
+        }
+        undoMoves[ply] = move;
+        undoStates[ply] = (captured + 1) | (castlingRights << 4) | ((enPassantSquare + 1) << 8);
+        undoKeys[ply] = zobristKey;
+        undoCheckers[ply] = getCheckers();
+        undoPinned[ply] = pinned;
+        ply++;
+
+        if (captured != EMPTY) {
+            removePiece(capturedSquare);
+        }
+        relocatePiece(from, to);
+
+        if (Move.isCastling(move)) {
+            relocatePiece(castlingRookFrom(from, to), castlingRookTo(from, to));
+        }
+
+        PieceType promotion = Move.promotion(move);
+        if (promotion != null) {
+            removePiece(to);
+            putPiece(colorOffset + promotion.ordinal(), to);
+        }
+
+        setEnPassantSquare(Move.isDoublePush(move) ? (from + to) / 2 : NO_SQUARE);
+        setCastlingRights(castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to]);
+        whiteToMove = !whiteToMove;
+        zobristKey ^= Zobrist.blackToMove();
+        checkStateDirty = true;
+        refreshCheckState();
+    }
+
+    /**
+     * Takes back the last move made with {@link #makeMove(int)}.
+     */
+    public void unmakeMove() {
+        ply--;
+        int move = undoMoves[ply];
+        int state = undoStates[ply];
+        int from = Move.from(move);
+        int to = Move.to(move);
+
+        whiteToMove = !whiteToMove;
+        castlingRights = (state >>> 4) & ALL_CASTLING_RIGHTS;
+        enPassantSquare = ((state >>> 8) & 0x7F) - 1;
+
+        if (Move.promotion(move) != null) {
+            int colorOffset = whiteToMove ? 0 : PIECE_TYPE_COUNT;
+            removePiece(to);
+            putPiece(colorOffset + PieceType.PAWN.ordinal(), to);
+        }
+
+        if (Move.isCastling(move)) {
+            relocatePiece(castlingRookTo(from, to), castlingRookFrom(from, to));
+        }
+
+        relocatePiece(to, from);
+
+        int captured = (state & 0xF) - 1;
+        if (captured != EMPTY) {
+            int capturedSquare = to;
+            if (Move.isEnPassant(move)) {
+                capturedSquare = whiteToMove ? to + 8 : to - 8;
+            }
+            putPiece(captured, capturedSquare);
+        }
+
+        // The piece updates above toggled the key and dirtied the check state; the saved values are exact
+        zobristKey = undoKeys[ply];
+        checkers = undoCheckers[ply];
+        pinned = undoPinned[ply];
+        checkStateDirty = false;
+    }
+
+    private static int castlingRookFrom(int kingFrom, int kingTo) {
+        return kingTo > kingFrom ? kingTo + 1 : kingTo - 2;
+    }
+
+    private static int castlingRookTo(int kingFrom, int kingTo) {
+        return kingTo > kingFrom ? kingTo - 1 : kingTo + 1;
+    }
+
+    // Attack queries
+    public boolean isSquareAttacked(int square, PieceColor attackingColor) {
+        PieceColor defendingColor = attackingColor == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+        if ((Attacks.pawnAttacks(defendingColor, square) & getPieces(PieceType.PAWN, attackingColor)) != 0) {
+            return true;
+        }
+        if ((Attacks.knightAttacks(square) & getPieces(PieceType.KNIGHT, attackingColor)) != 0) {
+            return true;
+        }
+        if ((Attacks.kingAttacks(square) & getPieces(PieceType.KING, attackingColor)) != 0) {
+            return true;
+        }
+        long queens = getPieces(PieceType.QUEEN, attackingColor);
+        long diagonalSliders = getPieces(PieceType.BISHOP, attackingColor) | queens;
+        if (diagonalSliders != 0 && (Attacks.bishopAttacks(square, occupied) & diagonalSliders) != 0) {
+            return true;
+        }
+        long straightSliders = getPieces(PieceType.ROOK, attackingColor) | queens;
+        return straightSliders != 0 && (Attacks.rookAttacks(square, occupied) & straightSliders) != 0;
+    }
+
+    /**
+     * Returns the pieces of the given color attacking a square, with sliders evaluated
+     * against the supplied occupancy.
+     */
+    public long attackersTo(int square, PieceColor attackingColor, long occupied) {
+        long queens = getPieces(PieceType.QUEEN, attackingColor);
+        return (Attacks.pawnAttacks(opposite(attackingColor), square) & getPieces(PieceType.PAWN, attackingColor))
+                | (Attacks.knightAttacks(square) & getPieces(PieceType.KNIGHT, attackingColor))
+                | (Attacks.kingAttacks(square) & getPieces(PieceType.KING, attackingColor))
+                | (Attacks.bishopAttacks(square, occupied) & (getPieces(PieceType.BISHOP, attackingColor) | queens))
+                | (Attacks.rookAttacks(square, occupied) & (getPieces(PieceType.ROOK, attackingColor) | queens));
+    }
+
+    /**
+     * Returns the pieces of the given color that are pinned against their own king.
+     */
+    public long pinnedPieces(PieceColor color) {
+        int kingSquare = getKingSquare(color);
+        if (kingSquare == NO_SQUARE) {
+            return 0L;
+        }
+        PieceColor enemy = opposite(color);
+        long enemyPieces = getOccupancy(enemy);
+        long queens = getPieces(PieceType.QUEEN, enemy);
+        long snipers = (Attacks.rookAttacks(kingSquare, enemyPieces) & (getPieces(PieceType.ROOK, enemy) | queens))
+                | (Attacks.bishopAttacks(kingSquare, enemyPieces) & (getPieces(PieceType.BISHOP, enemy) | queens));
+
+        long pinnedPieces = 0L;
+        long ownPieces = getOccupancy(color);
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.between(kingSquare, sniper) & occupied;
+            if (Long.bitCount(blockers) == 1 && (blockers & ownPieces) != 0) {
+                pinnedPieces |= blockers;
+            }
+        }
+        return pinnedPieces;
+    }
+
+    public boolean isKingInCheck(PieceColor color) {
+        if (color == getSideToMove()) {
+            return isInCheck();
+        }
+        int kingSquare = getKingSquare(color);
+        if (kingSquare == NO_SQUARE) {
+            return false;
+        }
+        PieceColor attackingColor = color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+        return isSquareAttacked(kingSquare, attackingColor);
+    }
+
+    private static PieceColor opposite(PieceColor color) {
+        return color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+    }
+}
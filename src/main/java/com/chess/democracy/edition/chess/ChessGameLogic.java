@@ -6,15 +6,26 @@ import java.util.List;
 public class ChessGameLogic implements Cloneable {
 
     // Game state
-    private boolean isWhiteTurn = true;
     private boolean gameOver = false;
     private boolean isCheckmate = false;
     private boolean isStalemate = false;
     private PieceColor winner = null;
 
-    // Board representation
+    // Board representation: the bitboard position is the source of truth and the
+    // piece objects are a view of it kept in sync for the UI
+    private BitboardPosition position;
     private ChessPiece[][] board;
 
+    // Reusable buffer for move generation
+    private MoveList moveBuffer = new MoveList();
+
+    // The only pawn that can currently be captured en passant, if any
+    private Pawn enPassantPawn;
+
+    // Squares of a pawn move waiting for the promotion choice
+    private int pendingPromotionFrom = BitboardPosition.NO_SQUARE;
+    private int pendingPromotionTo = BitboardPosition.NO_SQUARE;
+
     // Lists to keep track of captured pieces
     private List<ChessPiece> capturedPiecesWhite = new ArrayList<>();
     private List<ChessPiece> capturedPiecesBlack = new ArrayList<>();
@@ -27,38 +38,109 @@ public class ChessGameLogic implements Cloneable {
         setupBoard();
     }
 
+    /**
+     * Creates a game starting from the position described by a FEN string.
+     *
+     * @param fen the position in Forsyth-Edwards Notation.
+     * @throws IllegalArgumentException if the FEN cannot be parsed.
+     */
+    public ChessGameLogic(String fen) {
+        position = new BitboardPosition();
+        position.setupFromFen(fen);
+        board = createBoardView();
+        markMovedPieces();
+    }
+
     // Board setup methods
     private void setupBoard() {
-        board = new ChessPiece[8][8];
+        position = new BitboardPosition();
+        position.setupInitialPosition();
+        board = createBoardView();
+    }
 
-        // Add pawns
-        for (int col = 0; col < 8; col++) {
-            board[6][col] = new Pawn(PieceColor.WHITE, 6, col);
-            board[1][col] = new Pawn(PieceColor.BLACK, 1, col);
+    // Builds the piece objects the UI works with from the bitboard position
+    private ChessPiece[][] createBoardView() {
+        ChessPiece[][] view = new ChessPiece[8][8];
+        long occupied = position.getOccupied();
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            int row = BitboardPosition.row(square);
+            int col = BitboardPosition.col(square);
+            view[row][col] = createPiece(position.getPieceType(square), position.getPieceColor(square), row, col);
         }
+        return view;
+    }
 
-        // Add other pieces
-        addBackRow(PieceColor.WHITE, 7);
-        addBackRow(PieceColor.BLACK, 0);
+    // Brings the view's hasMoved and en passant flags in line with a position that did not start from the initial setup
+    private void markMovedPieces() {
+        int rights = position.getCastlingRights();
+        for (ChessPiece[] row : board) {
+            for (ChessPiece piece : row) {
+                if (piece == null) {
+                    continue;
+                }
+                boolean white = piece.getColor() == PieceColor.WHITE;
+                int homeRow = white ? 7 : 0;
+                switch (piece.getType()) {
+                    case PAWN:
+                        piece.setHasMoved(piece.getRow() != (white ? 6 : 1));
+                        break;
+                    case KING: {
+                        int kingRights = white
+                                ? BitboardPosition.WHITE_KINGSIDE | BitboardPosition.WHITE_QUEENSIDE
+                                : BitboardPosition.BLACK_KINGSIDE | BitboardPosition.BLACK_QUEENSIDE;
+                        piece.setHasMoved((rights & kingRights) == 0);
+                        break;
+                    }
+                    case ROOK: {
+                        int rookRight = 0;
+                        if (piece.getRow() == homeRow && piece.getCol() == 7) {
+                            rookRight = white ? BitboardPosition.WHITE_KINGSIDE : BitboardPosition.BLACK_KINGSIDE;
+                        } else if (piece.getRow() == homeRow && piece.getCol() == 0) {
+                            rookRight = white ? BitboardPosition.WHITE_QUEENSIDE : BitboardPosition.BLACK_QUEENSIDE;
+                        }
+                        piece.setHasMoved((rights & rookRight) == 0);
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            }
+        }
+
+        int enPassantSquare = position.getEnPassantSquare();
+        if (enPassantSquare != BitboardPosition.NO_SQUARE) {
+            int pawnRow = BitboardPosition.row(enPassantSquare) + (position.isWhiteToMove() ? 1 : -1);
+            ChessPiece pawn = board[pawnRow][BitboardPosition.col(enPassantSquare)];
+            if (pawn instanceof Pawn) {
+                enPassantPawn = (Pawn) pawn;
+                enPassantPawn.setMovedTwoSquaresLastTurn(true);
+            }
+        }
     }
 
-    private void addBackRow(PieceColor color, int row) {
-        ChessPiece[] backRow = {
-                new Rook(color, row, 0),
-                new Knight(color, row, 1),
-                new Bishop(color, row, 2),
-                new Queen(color, row, 3),
-                new King(color, row, 4),
-                new Bishop(color, row, 5),
-                new Knight(color, row, 6),
-                new Rook(color, row, 7)
-        };
-        System.arraycopy(backRow, 0, board[row], 0, 8);
+    public static ChessPiece createPiece(PieceType type, PieceColor color, int row, int col) {
+        switch (type) {
+            case PAWN:
+                return new Pawn(color, row, col);
+            case KNIGHT:
+                return new Knight(color, row, col);
+            case BISHOP:
+                return new Bishop(color, row, col);
+            case ROOK:
+                return new Rook(color, row, col);
+            case QUEEN:
+                return new Queen(color, row, col);
+            default:
+                return new King(color, row, col);
+        }
     }
 
     // Getters
+    // The position is the one record of whose turn it is; the view only follows it
     public boolean isWhiteTurn() {
-        return isWhiteTurn;
+        return position.isWhiteToMove();
     }
 
     public boolean isGameOver() {
@@ -69,6 +151,23 @@ public class ChessGameLogic implements Cloneable {
         return board;
     }
 
+    public BitboardPosition getPosition() {
+        return position;
+    }
+
+    public String toFen() {
+        return position.toFen();
+    }
+
+    // Zobrist key identifying the current position, including side to move, castling rights and en passant
+    public long getZobristKey() {
+        return position.getZobristKey();
+    }
+
+    public long computeZobristKey() {
+        return position.computeZobristKey();
+    }
+
     public boolean isCheckmate() {
         return isCheckmate;
     }
@@ -98,31 +197,31 @@ public class ChessGameLogic implements Cloneable {
         ChessPiece movingPiece = board[startRow][startCol];
 
         if (movingPiece == null) {
-            return new MoveResult(false, "No piece at the selected starting position.");
+            return MoveStatus.NO_PIECE.getResult();
         }
 
         if (!isCorrectTurn(movingPiece)) {
-            return new MoveResult(false, "It's not your turn.");
+            return MoveStatus.NOT_YOUR_TURN.getResult();
         }
 
-        String validationError = validateMove(movingPiece, endRow, endCol);
-        if (validationError != null) {
-            boolean animateKing = false;
-            if ("Invalid move: You cannot leave your king in check!".equals(validationError)) {
-                animateKing = true;
-            }
-            return new MoveResult(false, validationError, animateKing);
+        MoveStatus validationStatus = checkMove(movingPiece, endRow, endCol);
+        if (validationStatus != MoveStatus.SUCCESS) {
+            return validationStatus.getResult();
         }
 
         lastMoveDetails = new MoveDetails();
         lastMoveDetails.setMovingPiece(movingPiece);
 
+        int from = BitboardPosition.square(startRow, startCol);
+        int to = BitboardPosition.square(endRow, endCol);
+
         // Handle castling
         if (movingPiece instanceof King && Math.abs(endCol - startCol) == 2) {
             // Perform castling
             performCastling((King) movingPiece, endRow, endCol);
             movingPiece.setHasMoved(true);
             lastMoveDetails.setCastlingOccurred(true); // Optionally track castling
+            position.makeMove(findLegalMove(from, to, null));
         } else {
             handleCapture(movingPiece, endRow, endCol);
 
@@ -138,20 +237,144 @@ public class ChessGameLogic implements Cloneable {
                 if ((pawn.getColor() == PieceColor.WHITE && endRow == 0) ||
                         (pawn.getColor() == PieceColor.BLACK && endRow == 7)) {
 
+                    // The position is updated once the promotion piece is chosen
+                    movingPiece.setHasMoved(true);
+                    pendingPromotionFrom = from;
+                    pendingPromotionTo = to;
                     lastMoveDetails.setPawnPromoted(true);
                     lastMoveDetails.setPromotionPosition(endRow, endCol);
-                    return new MoveResult(true, "Pawn promotion pending.");
+                    return MoveStatus.PROMOTION_PENDING.getResult();
                 }
             }
+            position.makeMove(findLegalMove(from, to, null));
         }
 
         movingPiece.setHasMoved(true);
 
-        switchTurn();
+        resetEnPassantFlags(movingPiece);
+
+        checkGameOver();
+
+        return MoveStatus.SUCCESS.getResult();
+    }
+
+    /**
+     * Completes a pending pawn promotion by replacing the pawn with the chosen piece
+     * and passing the turn to the other player.
+     *
+     * @param type the piece type the pawn is promoted to.
+     * @return the new piece, or null if no promotion is pending.
+     */
+    public ChessPiece promotePawn(PieceType type) {
+        if (pendingPromotionFrom == BitboardPosition.NO_SQUARE) {
+            return null;
+        }
+        int row = BitboardPosition.row(pendingPromotionTo);
+        int col = BitboardPosition.col(pendingPromotionTo);
+        ChessPiece pawn = board[row][col];
+
+        ChessPiece newPiece = createPiece(type, pawn.getColor(), row, col);
+        newPiece.setHasMoved(true);
+        board[row][col] = newPiece;
+
+        position.makeMove(findLegalMove(pendingPromotionFrom, pendingPromotionTo, type));
+        pendingPromotionFrom = BitboardPosition.NO_SQUARE;
+        pendingPromotionTo = BitboardPosition.NO_SQUARE;
+        lastMoveDetails.setPawnPromoted(false);
+
+        resetEnPassantFlags(newPiece);
+
+        checkGameOver();
+
+        return newPiece;
+    }
 
-        resetEnPassantFlags(movingPiece.getColor());
+    /**
+     * Plays a {@link Move}-encoded move the way a player would, through
+     * {@link #movePiece(int, int, int, int)}, and completes a promotion with the encoded piece.
+     *
+     * @param move the move to play; a promotion without a piece type promotes to a queen.
+     * @return the result of the move.
+     */
+    public MoveResult playMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        MoveResult result = movePiece(BitboardPosition.row(from), BitboardPosition.col(from),
+                BitboardPosition.row(to), BitboardPosition.col(to));
+        if (result.getStatus() == MoveStatus.PROMOTION_PENDING) {
+            PieceType promotion = Move.promotion(move);
+            promotePawn(promotion != null ? promotion : PieceType.QUEEN);
+            return MoveStatus.SUCCESS.getResult();
+        }
+        return result;
+    }
+
+    /**
+     * Plays a move on the bitboard position only, for trial moves and search. The {@link ChessPiece}
+     * view is not updated, so every call must be paired with {@link #unmakeMove()} before the next
+     * {@link #movePiece(int, int, int, int)}.
+     *
+     * @param move a {@link Move}-encoded legal move.
+     */
+    public void makeMove(int move) {
+        position.makeMove(move);
+    }
+
+    /**
+     * Takes back the last move played with {@link #makeMove(int)}.
+     */
+    public void unmakeMove() {
+        position.unmakeMove();
+    }
+
+    /**
+     * Fills the list with every legal move of the player to move, encoded as {@link Move} ints.
+     * The list is cleared first and can be reused across calls without allocating.
+     *
+     * @param moves the buffer to fill.
+     */
+    public void generateLegalMoves(MoveList moves) {
+        MoveGenerator.generateLegalMoves(position, position.getSideToMove(), moves);
+    }
+
+    /**
+     * Fills the list with the legal moves of the piece on the given square, which is empty
+     * if the square is empty or holds a piece of the player not to move.
+     *
+     * @param row   the row of the piece.
+     * @param col   the column of the piece.
+     * @param moves the buffer to fill.
+     */
+    public void generateLegalMoves(int row, int col, MoveList moves) {
+        int square = BitboardPosition.square(row, col);
+        if (position.getPieceColor(square) != position.getSideToMove()) {
+            moves.clear();
+            return;
+        }
+        MoveGenerator.generateLegalMoves(position, position.getSideToMove(), BitboardPosition.bit(square), moves);
+    }
+
+    /**
+     * Looks up a legal move of the player to move by its squares.
+     *
+     * @param promotion the promotion piece for a pawn reaching the last rank, otherwise null.
+     * @return the {@link Move}-encoded move, or {@link Move#NONE} if it is not legal.
+     */
+    public int findLegalMove(int startRow, int startCol, int endRow, int endCol, PieceType promotion) {
+        int from = BitboardPosition.square(startRow, startCol);
+        if (position.getPieceColor(from) != position.getSideToMove()) {
+            return Move.NONE;
+        }
+        return findLegalMove(from, BitboardPosition.square(endRow, endCol), promotion);
+    }
 
-        return new MoveResult(true);
+    private int findLegalMove(int from, int to, PieceType promotion) {
+        PieceColor color = position.getPieceColor(from);
+        if (color == null) {
+            return Move.NONE;
+        }
+        MoveGenerator.generateLegalMoves(position, color, BitboardPosition.bit(from), moveBuffer);
+        return moveBuffer.find(from, to, promotion);
     }
 
     private void performCastling(King king, int endRow, int endCol) {
@@ -176,29 +399,27 @@ public class ChessGameLogic implements Cloneable {
     }
 
 
-    private void resetEnPassantFlags(PieceColor color) {
-        PieceColor oppositeColor = (color == PieceColor.WHITE) ? PieceColor.BLACK : PieceColor.WHITE;
-        for (ChessPiece[] row : board) {
-            for (ChessPiece piece : row) {
-                if (piece instanceof Pawn && piece.getColor() == oppositeColor) {
-                    ((Pawn) piece).setMovedTwoSquaresLastTurn(false);
-                }
-            }
+    // Only one pawn at a time can carry the en passant flag, so track it instead of scanning the board
+    private void resetEnPassantFlags(ChessPiece movingPiece) {
+        if (enPassantPawn != null && enPassantPawn != movingPiece) {
+            enPassantPawn.setMovedTwoSquaresLastTurn(false);
+        }
+        if (movingPiece instanceof Pawn && ((Pawn) movingPiece).hasMovedTwoSquaresLastTurn()) {
+            enPassantPawn = (Pawn) movingPiece;
+        } else {
+            enPassantPawn = null;
         }
     }
 
-    public void switchTurn() {
-        isWhiteTurn = !isWhiteTurn;
-
-        // After switching, currentPlayerColor is the player whose turn it now is
-        PieceColor currentPlayerColor = isWhiteTurn ? PieceColor.WHITE : PieceColor.BLACK;
+    // Called once a move is on the position, which has already passed the turn to the other player
+    private void checkGameOver() {
+        PieceColor currentPlayerColor = position.getSideToMove();
 
-        boolean hasLegalMoves = playerHasLegalMoves(currentPlayerColor);
-        boolean inCheck = isKingInCheck(currentPlayerColor);
-
-        if (!hasLegalMoves) {
+        // The position tracks checkers and pins as moves are made, so only the
+        // "any legal move?" question needs the generator, and it stops at the first king escape
+        if (!playerHasLegalMoves(currentPlayerColor)) {
             gameOver = true;
-            if (inCheck) {
+            if (position.isInCheck()) {
                 // Checkmate
                 isCheckmate = true;
                 winner = (currentPlayerColor == PieceColor.WHITE) ? PieceColor.BLACK : PieceColor.WHITE;
@@ -210,121 +431,75 @@ public class ChessGameLogic implements Cloneable {
     }
 
     public boolean isCorrectTurn(ChessPiece piece) {
-        return isWhiteTurn == (piece.getColor() == PieceColor.WHITE);
+        return piece.getColor() == position.getSideToMove();
     }
 
+    // Returns the error message for an invalid move, or null if the move is valid
     public String validateMove(ChessPiece movingPiece, int endRow, int endCol) {
-        if (!movingPiece.isValidMove(endRow, endCol, this)) {
-            return "Invalid move: This move is not permitted for the selected piece.";
+        return checkMove(movingPiece, endRow, endCol).getMessage();
+    }
+
+    public MoveStatus checkMove(ChessPiece movingPiece, int endRow, int endCol) {
+        int from = BitboardPosition.square(movingPiece.getRow(), movingPiece.getCol());
+        int to = BitboardPosition.square(endRow, endCol);
+        long fromMask = BitboardPosition.bit(from);
+
+        MoveGenerator.generateLegalMoves(position, movingPiece.getColor(), fromMask, moveBuffer);
+        if (moveBuffer.contains(from, to)) {
+            return MoveStatus.SUCCESS;
         }
 
-        if (wouldLeaveKingInCheck(movingPiece, endRow, endCol)) {
-            return "Invalid move: You cannot leave your king in check!";
+        // The move follows the piece's rules, so it must be exposing the king
+        MoveGenerator.generatePseudoLegalMoves(position, movingPiece.getColor(), fromMask, moveBuffer);
+        if (moveBuffer.contains(from, to)) {
+            return MoveStatus.LEAVES_KING_IN_CHECK;
         }
 
         // Check for capturing own piece (not applicable for castling as king moves to empty square)
         ChessPiece targetPiece = board[endRow][endCol];
         if (targetPiece != null && movingPiece.getColor() == targetPiece.getColor()) {
-            return "Invalid move: Cannot capture your own piece.";
+            return MoveStatus.CAPTURES_OWN_PIECE;
         }
 
-        return null;
+        return MoveStatus.ILLEGAL_PIECE_MOVE;
     }
 
-
-    private boolean wouldLeaveKingInCheck(ChessPiece movingPiece, int endRow, int endCol) {
-        int startRow = movingPiece.getRow();
-        int startCol = movingPiece.getCol();
-        ChessPiece targetPiece = board[endRow][endCol];
-
-        boolean hasMoved = movingPiece.hasMoved();
-        boolean targetCaptured = targetPiece != null && targetPiece.isCaptured();
-
-        boolean movedTwoSquaresLastTurn = false;
-        if (movingPiece instanceof Pawn) {
-            movedTwoSquaresLastTurn = ((Pawn) movingPiece).hasMovedTwoSquaresLastTurn();
-        }
-
-        board[endRow][endCol] = movingPiece;
-        board[startRow][startCol] = null;
-        movingPiece.setPosition(endRow, endCol);
-        movingPiece.setHasMoved(true);
-        if (movingPiece instanceof Pawn) {
-            ((Pawn) movingPiece).setMovedTwoSquaresLastTurn(false);
-        }
-        if (targetPiece != null) {
-            targetPiece.setCaptured(true);
-        }
-
-        boolean kingInCheck = isKingInCheck(movingPiece.getColor());
-
-        movingPiece.setPosition(startRow, startCol);
-        movingPiece.setHasMoved(hasMoved);
-        if (movingPiece instanceof Pawn) {
-            ((Pawn) movingPiece).setMovedTwoSquaresLastTurn(movedTwoSquaresLastTurn);
-        }
-        board[startRow][startCol] = movingPiece;
-        board[endRow][endCol] = targetPiece;
-        if (targetPiece != null) {
-            targetPiece.setCaptured(targetCaptured);
-        }
-
-        return kingInCheck;
+    public boolean isKingInCheck(PieceColor color) {
+        return position.isKingInCheck(color);
     }
 
-    public boolean isKingInCheck(PieceColor color) {
-        ChessPiece king = findKing(color);
-        if (king == null) return false;
+    // Whether the player to move is in check
+    public boolean isInCheck() {
+        return position.isInCheck();
+    }
 
-        return isSquareUnderAttack(king.getRow(), king.getCol(), color);
+    // The pieces giving check to the player to move
+    public List<ChessPiece> getCheckingPieces() {
+        List<ChessPiece> checkingPieces = new ArrayList<>(2);
+        long checkers = position.getCheckers();
+        while (checkers != 0) {
+            int square = Long.numberOfTrailingZeros(checkers);
+            checkers &= checkers - 1;
+            checkingPieces.add(board[BitboardPosition.row(square)][BitboardPosition.col(square)]);
+        }
+        return checkingPieces;
     }
 
     public ChessPiece findKing(PieceColor color) {
-        for (ChessPiece[] row : board) {
-            for (ChessPiece piece : row) {
-                if (piece instanceof King && piece.getColor() == color) {
-                    return piece;
-                }
-            }
+        int kingSquare = position.getKingSquare(color);
+        if (kingSquare == BitboardPosition.NO_SQUARE) {
+            return null;
         }
-        return null;
+        return board[BitboardPosition.row(kingSquare)][BitboardPosition.col(kingSquare)];
     }
 
     public boolean isSquareUnderAttack(int row, int col, PieceColor defendingColor) {
         PieceColor attackingColor = (defendingColor == PieceColor.WHITE) ? PieceColor.BLACK : PieceColor.WHITE;
-        for (ChessPiece[] boardRow : board) {
-            for (ChessPiece piece : boardRow) {
-                if (piece != null && piece.getColor() == attackingColor) {
-                    if (piece.canAttackSquare(row, col, this)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return position.isSquareAttacked(BitboardPosition.square(row, col), attackingColor);
     }
 
     public boolean playerHasLegalMoves(PieceColor playerColor) {
-        for (ChessPiece[] boardRow : board) {
-            for (ChessPiece piece : boardRow) {
-                if (piece != null && piece.getColor() == playerColor) {
-                    for (int destRow = 0; destRow < 8; destRow++) {
-                        for (int destCol = 0; destCol < 8; destCol++) {
-                            ChessPiece targetPiece = board[destRow][destCol];
-                            if (targetPiece != null && targetPiece.getColor() == playerColor) {
-                                continue; // Can't capture your own piece
-                            }
-                            if (piece.isValidMove(destRow, destCol, this)) {
-                                if (!wouldLeaveKingInCheck(piece, destRow, destCol)) {
-                                    return true;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return false;
+        return MoveGenerator.hasLegalMove(position, playerColor, moveBuffer);
     }
 
 
@@ -368,6 +543,9 @@ public class ChessGameLogic implements Cloneable {
     @Override
     public ChessGameLogic clone() throws CloneNotSupportedException {
         ChessGameLogic clonedGame = (ChessGameLogic) super.clone();
+        clonedGame.position = new BitboardPosition();
+        clonedGame.position.copyFrom(this.position);
+        clonedGame.moveBuffer = new MoveList();
         clonedGame.board = new ChessPiece[8][8];
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
@@ -376,25 +554,16 @@ public class ChessGameLogic implements Cloneable {
                 }
             }
         }
+        if (this.enPassantPawn != null) {
+            clonedGame.enPassantPawn = (Pawn) clonedGame.board[enPassantPawn.getRow()][enPassantPawn.getCol()];
+        }
         clonedGame.capturedPiecesWhite = new ArrayList<>(this.capturedPiecesWhite);
         clonedGame.capturedPiecesBlack = new ArrayList<>(this.capturedPiecesBlack);
         return clonedGame;
     }
 
     public boolean isPathClear(int startRow, int startCol, int endRow, int endCol) {
-        int rowDirection = Integer.compare(endRow, startRow);
-        int colDirection = Integer.compare(endCol, startCol);
-
-        int currentRow = startRow + rowDirection;
-        int currentCol = startCol + colDirection;
-
-        while (currentRow != endRow || currentCol != endCol) {
-            if (board[currentRow][currentCol] != null) {
-                return false;
-            }
-            currentRow += rowDirection;
-            currentCol += colDirection;
-        }
-        return true;
+        long between = Attacks.between(BitboardPosition.square(startRow, startCol), BitboardPosition.square(endRow, endCol));
+        return (between & position.getOccupied()) == 0;
     }
 }
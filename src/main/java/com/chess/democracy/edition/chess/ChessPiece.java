@@ -52,6 +52,8 @@ public abstract class ChessPiece implements Cloneable {
         this.captured = captured;
     }
 
+    public abstract PieceType getType();
+
     // Abstract methods for movement and attack
     public abstract boolean isValidMove(int endRow, int endCol, ChessGameLogic game);
 
@@ -6,6 +6,11 @@ public class King extends ChessPiece {
         super(color, row, col);
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.KING;
+    }
+
     @Override
     public boolean isValidMove(int endRow, int endCol, ChessGameLogic game) {
         if (isSamePosition(endRow, endCol)) {
@@ -45,7 +50,7 @@ public class King extends ChessPiece {
         ChessPiece rook = game.getBoard()[this.getRow()][rookCol];
 
         // Check if the rook exists, is the correct color, and hasn't moved
-        if (!(rook instanceof Rook) || rook.hasMoved() || rook.getColor() != this.getColor()) {
+        if (rook == null || rook.getType() != PieceType.ROOK || rook.hasMoved() || rook.getColor() != this.getColor()) {
             return false;
         }
 
@@ -6,6 +6,11 @@ public class Knight extends ChessPiece {
         super(color, row, col);
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.KNIGHT;
+    }
+
     @Override
     public boolean isValidMove(int endRow, int endCol, ChessGameLogic game) {
         if (isSamePosition(endRow, endCol)) {
@@ -0,0 +1,121 @@
+package com.chess.democracy.edition.chess;
+
+/**
+ * Moves packed into a single {@code int}: bits 0-5 hold the starting square, bits 6-11 the
+ * destination square, bits 12-14 the promotion piece type ordinal (0 for none) and the
+ * remaining bits the move flags. Squares use the {@link BitboardPosition} indexing.
+ */
+public final class Move {
+    public static final int NONE = 0;
+
+    public static final int FLAG_CAPTURE = 1 << 15;
+    public static final int FLAG_EN_PASSANT = 1 << 16;
+    public static final int FLAG_CASTLING = 1 << 17;
+    public static final int FLAG_DOUBLE_PUSH = 1 << 18;
+
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PROMOTION_MASK = 0x7;
+    private static final int KEY_MASK = (1 << 15) - 1;
+
+    private Move() {
+    }
+
+    public static int of(int from, int to, int flags) {
+        return from | (to << 6) | flags;
+    }
+
+    public static int of(int from, int to, int flags, PieceType promotion) {
+        return of(from, to, flags) | (promotion.ordinal() << PROMOTION_SHIFT);
+    }
+
+    // The squares and promotion piece without the flags, which is all a player chooses
+    public static int key(int move) {
+        return move & KEY_MASK;
+    }
+
+    public static int from(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & SQUARE_MASK;
+    }
+
+    public static PieceType promotion(int move) {
+        int promotion = (move >>> PROMOTION_SHIFT) & PROMOTION_MASK;
+        return promotion == 0 ? null : PieceType.fromIndex(promotion);
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & FLAG_CAPTURE) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & FLAG_EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return (move & FLAG_CASTLING) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & FLAG_DOUBLE_PUSH) != 0;
+    }
+
+    /**
+     * Parses a move in the coordinate form written by {@link #toString(int)}, such as "e2e4" or "e7e8q".
+     * The result has no flags, so it is only a {@link #key(int)} to look the legal move up with.
+     *
+     * @param text the move text.
+     * @return the move key, or {@link #NONE} if the text is not a move.
+     */
+    public static int parse(String text) {
+        if (text == null || (text.length() != 4 && text.length() != 5)) {
+            return NONE;
+        }
+        int from = parseSquare(text.charAt(0), text.charAt(1));
+        int to = parseSquare(text.charAt(2), text.charAt(3));
+        if (from < 0 || to < 0 || from == to) {
+            return NONE;
+        }
+        if (text.length() == 4) {
+            return of(from, to, 0);
+        }
+        switch (Character.toLowerCase(text.charAt(4))) {
+            case 'q':
+                return of(from, to, 0, PieceType.QUEEN);
+            case 'r':
+                return of(from, to, 0, PieceType.ROOK);
+            case 'b':
+                return of(from, to, 0, PieceType.BISHOP);
+            case 'n':
+                return of(from, to, 0, PieceType.KNIGHT);
+            default:
+                return NONE;
+        }
+    }
+
+    private static int parseSquare(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return BitboardPosition.square('8' - rank, file - 'a');
+    }
+
+    public static String toString(int move) {
+        StringBuilder builder = new StringBuilder(5);
+        appendSquare(builder, from(move));
+        appendSquare(builder, to(move));
+        PieceType promotion = promotion(move);
+        if (promotion != null) {
+            builder.append(promotion == PieceType.KNIGHT ? 'n' : Character.toLowerCase(promotion.name().charAt(0)));
+        }
+        return builder.toString();
+    }
+
+    private static void appendSquare(StringBuilder builder, int square) {
+        builder.append((char) ('a' + BitboardPosition.col(square)));
+        builder.append((char) ('8' - BitboardPosition.row(square)));
+    }
+}
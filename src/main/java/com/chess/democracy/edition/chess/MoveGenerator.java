@@ -0,0 +1,252 @@
+package com.chess.democracy.edition.chess;
+
+/**
+ * Generates moves for a {@link BitboardPosition} from the precomputed {@link Attacks} tables.
+ * Legal generation filters candidates with the check and pin masks of the moving side's king
+ * instead of playing every move out, so only king moves and en passant need an attack test.
+ */
+public final class MoveGenerator {
+    private static final long ALL_SQUARES = -1L;
+
+    private static final PieceType[] PROMOTION_TYPES = {
+            PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT
+    };
+
+    private MoveGenerator() {
+    }
+
+    public static void generateLegalMoves(BitboardPosition position, PieceColor color, MoveList moves) {
+        generateMoves(position, color, ALL_SQUARES, true, moves);
+    }
+
+    // Only moves of the pieces on the squares in fromMask
+    public static void generateLegalMoves(BitboardPosition position, PieceColor color, long fromMask, MoveList moves) {
+        generateMoves(position, color, fromMask, true, moves);
+    }
+
+    // Moves that follow the piece movement rules but may leave the own king in check
+    public static void generatePseudoLegalMoves(BitboardPosition position, PieceColor color, long fromMask, MoveList moves) {
+        generateMoves(position, color, fromMask, false, moves);
+    }
+
+    public static boolean hasLegalMove(BitboardPosition position, PieceColor color, MoveList scratch) {
+        // A king step is the cheapest way out and the only one in double check
+        long king = position.getPieces(PieceType.KING, color);
+        generateMoves(position, color, king, true, scratch);
+        if (!scratch.isEmpty()) {
+            return true;
+        }
+        generateMoves(position, color, ~king, true, scratch);
+        return !scratch.isEmpty();
+    }
+
+    private static void generateMoves(BitboardPosition position, PieceColor color, long fromMask, boolean legal, MoveList moves) {
+        moves.clear();
+        PieceColor enemy = opposite(color);
+        long ownPieces = position.getOccupancy(color);
+        long enemyPieces = position.getOccupancy(enemy);
+        long occupied = position.getOccupied();
+        int kingSquare = position.getKingSquare(color);
+
+        long checkers = 0L;
+        long pinned = 0L;
+        if (legal && kingSquare != BitboardPosition.NO_SQUARE) {
+            if (color == position.getSideToMove()) {
+                // Maintained by the position as moves are made
+                checkers = position.getCheckers();
+                pinned = position.getPinned();
+            } else {
+                checkers = position.attackersTo(kingSquare, enemy, occupied);
+                pinned = position.pinnedPieces(color);
+            }
+        }
+
+        if (kingSquare != BitboardPosition.NO_SQUARE && (fromMask & BitboardPosition.bit(kingSquare)) != 0) {
+            generateKingMoves(position, color, kingSquare, checkers, legal, moves);
+        }
+
+        // In double check only the king can move
+        if (Long.bitCount(checkers) > 1) {
+            return;
+        }
+
+        // Squares that resolve a single check: capture the checker or block the ray
+        long checkMask = ALL_SQUARES;
+        if (checkers != 0) {
+            int checker = Long.numberOfTrailingZeros(checkers);
+            checkMask = checkers | Attacks.between(kingSquare, checker);
+        }
+
+        long targets = ~ownPieces & checkMask;
+
+        long knights = position.getPieces(PieceType.KNIGHT, color) & fromMask & ~pinned;
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            addMoves(from, Attacks.knightAttacks(from) & targets, enemyPieces, moves);
+        }
+
+        long queens = position.getPieces(PieceType.QUEEN, color);
+        long diagonalSliders = (position.getPieces(PieceType.BISHOP, color) | queens) & fromMask;
+        while (diagonalSliders != 0) {
+            int from = Long.numberOfTrailingZeros(diagonalSliders);
+            diagonalSliders &= diagonalSliders - 1;
+            long attacks = Attacks.bishopAttacks(from, occupied) & targets;
+            if ((pinned & BitboardPosition.bit(from)) != 0) {
+                attacks &= Attacks.line(kingSquare, from);
+            }
+            addMoves(from, attacks, enemyPieces, moves);
+        }
+
+        long straightSliders = (position.getPieces(PieceType.ROOK, color) | queens) & fromMask;
+        while (straightSliders != 0) {
+            int from = Long.numberOfTrailingZeros(straightSliders);
+            straightSliders &= straightSliders - 1;
+            long attacks = Attacks.rookAttacks(from, occupied) & targets;
+            if ((pinned & BitboardPosition.bit(from)) != 0) {
+                attacks &= Attacks.line(kingSquare, from);
+            }
+            addMoves(from, attacks, enemyPieces, moves);
+        }
+
+        generatePawnMoves(position, color, fromMask, kingSquare, pinned, checkMask, legal, moves);
+    }
+
+    private static void addMoves(int from, long destinations, long enemyPieces, MoveList moves) {
+        while (destinations != 0) {
+            int to = Long.numberOfTrailingZeros(destinations);
+            destinations &= destinations - 1;
+            int flags = (enemyPieces & BitboardPosition.bit(to)) != 0 ? Move.FLAG_CAPTURE : 0;
+            moves.add(Move.of(from, to, flags));
+        }
+    }
+
+    private static void generateKingMoves(BitboardPosition position, PieceColor color, int kingSquare,
+                                          long checkers, boolean legal, MoveList moves) {
+        PieceColor enemy = opposite(color);
+        long enemyPieces = position.getOccupancy(enemy);
+        // The king must not hide behind itself from a slider, so test with it lifted off the board
+        long occupiedWithoutKing = position.getOccupied() & ~BitboardPosition.bit(kingSquare);
+
+        long destinations = Attacks.kingAttacks(kingSquare) & ~position.getOccupancy(color);
+        while (destinations != 0) {
+            int to = Long.numberOfTrailingZeros(destinations);
+            destinations &= destinations - 1;
+            if (legal && position.attackersTo(to, enemy, occupiedWithoutKing) != 0) {
+                continue;
+            }
+            int flags = (enemyPieces & BitboardPosition.bit(to)) != 0 ? Move.FLAG_CAPTURE : 0;
+            moves.add(Move.of(kingSquare, to, flags));
+        }
+
+        // Castling out of check is never allowed; generateCastling tests it again for pseudo-legal lists
+        if (checkers == 0) {
+            generateCastling(position, color, kingSquare, moves);
+        }
+    }
+
+    private static void generateCastling(BitboardPosition position, PieceColor color, int kingSquare, MoveList moves) {
+        int rights = position.getCastlingRights();
+        int kingside = color == PieceColor.WHITE ? BitboardPosition.WHITE_KINGSIDE : BitboardPosition.BLACK_KINGSIDE;
+        int queenside = color == PieceColor.WHITE ? BitboardPosition.WHITE_QUEENSIDE : BitboardPosition.BLACK_QUEENSIDE;
+        if ((rights & (kingside | queenside)) == 0) {
+            return;
+        }
+        PieceColor enemy = opposite(color);
+        if (position.isSquareAttacked(kingSquare, enemy)) {
+            return;
+        }
+        int homeRow = BitboardPosition.row(kingSquare);
+        long occupied = position.getOccupied();
+
+        if ((rights & kingside) != 0
+                && (occupied & Attacks.between(kingSquare, BitboardPosition.square(homeRow, 7))) == 0
+                && !position.isSquareAttacked(kingSquare + 1, enemy)
+                && !position.isSquareAttacked(kingSquare + 2, enemy)) {
+            moves.add(Move.of(kingSquare, kingSquare + 2, Move.FLAG_CASTLING));
+        }
+        if ((rights & queenside) != 0
+                && (occupied & Attacks.between(kingSquare, BitboardPosition.square(homeRow, 0))) == 0
+                && !position.isSquareAttacked(kingSquare - 1, enemy)
+                && !position.isSquareAttacked(kingSquare - 2, enemy)) {
+            moves.add(Move.of(kingSquare, kingSquare - 2, Move.FLAG_CASTLING));
+        }
+    }
+
+    private static void generatePawnMoves(BitboardPosition position, PieceColor color, long fromMask, int kingSquare,
+                                          long pinned, long checkMask, boolean legal, MoveList moves) {
+        boolean white = color == PieceColor.WHITE;
+        int forward = white ? -8 : 8;
+        int startRow = white ? 6 : 1;
+        int promotionRow = white ? 0 : 7;
+        long enemyPieces = position.getOccupancy(opposite(color));
+        long occupied = position.getOccupied();
+        int enPassantSquare = position.getSideToMove() == color ? position.getEnPassantSquare() : BitboardPosition.NO_SQUARE;
+
+        long pawns = position.getPieces(PieceType.PAWN, color) & fromMask;
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+
+            long allowed = checkMask;
+            if ((pinned & BitboardPosition.bit(from)) != 0) {
+                allowed &= Attacks.line(kingSquare, from);
+            }
+
+            // Pushes
+            int oneStep = from + forward;
+            if ((occupied & BitboardPosition.bit(oneStep)) == 0) {
+                if ((allowed & BitboardPosition.bit(oneStep)) != 0) {
+                    addPawnMove(from, oneStep, 0, promotionRow, moves);
+                }
+                int twoSteps = oneStep + forward;
+                if (BitboardPosition.row(from) == startRow
+                        && (occupied & BitboardPosition.bit(twoSteps)) == 0
+                        && (allowed & BitboardPosition.bit(twoSteps)) != 0) {
+                    moves.add(Move.of(from, twoSteps, Move.FLAG_DOUBLE_PUSH));
+                }
+            }
+
+            // Captures
+            long captures = Attacks.pawnAttacks(color, from) & enemyPieces & allowed;
+            while (captures != 0) {
+                int to = Long.numberOfTrailingZeros(captures);
+                captures &= captures - 1;
+                addPawnMove(from, to, Move.FLAG_CAPTURE, promotionRow, moves);
+            }
+
+            if (enPassantSquare != BitboardPosition.NO_SQUARE
+                    && (Attacks.pawnAttacks(color, from) & BitboardPosition.bit(enPassantSquare)) != 0
+                    && (!legal || isLegalEnPassant(position, color, from, enPassantSquare, kingSquare))) {
+                moves.add(Move.of(from, enPassantSquare, Move.FLAG_CAPTURE | Move.FLAG_EN_PASSANT));
+            }
+        }
+    }
+
+    private static void addPawnMove(int from, int to, int flags, int promotionRow, MoveList moves) {
+        if (BitboardPosition.row(to) == promotionRow) {
+            for (PieceType promotion : PROMOTION_TYPES) {
+                moves.add(Move.of(from, to, flags, promotion));
+            }
+        } else {
+            moves.add(Move.of(from, to, flags));
+        }
+    }
+
+    // En passant removes two pieces from one rank, so pins and checks are simply re-tested on the resulting occupancy
+    private static boolean isLegalEnPassant(BitboardPosition position, PieceColor color, int from, int to, int kingSquare) {
+        if (kingSquare == BitboardPosition.NO_SQUARE) {
+            return true;
+        }
+        int capturedSquare = color == PieceColor.WHITE ? to + 8 : to - 8;
+        long occupied = (position.getOccupied() & ~BitboardPosition.bit(from) & ~BitboardPosition.bit(capturedSquare))
+                | BitboardPosition.bit(to);
+        long attackers = position.attackersTo(kingSquare, opposite(color), occupied)
+                & ~BitboardPosition.bit(capturedSquare);
+        return attackers == 0;
+    }
+
+    private static PieceColor opposite(PieceColor color) {
+        return color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+    }
+}
@@ -0,0 +1,52 @@
+package com.chess.democracy.edition.chess;
+
+/**
+ * Reusable buffer of {@link Move}-encoded moves. A position never has more than 218 legal
+ * moves, so one list can be cleared and refilled without ever growing.
+ */
+public class MoveList {
+    public static final int CAPACITY = 256;
+
+    private final int[] moves = new int[CAPACITY];
+    private int size;
+
+    public void add(int move) {
+        moves[size++] = move;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Finds a move by its squares; promotions match the requested piece type
+    public int find(int from, int to, PieceType promotion) {
+        for (int i = 0; i < size; i++) {
+            int move = moves[i];
+            if (Move.from(move) == from && Move.to(move) == to && Move.promotion(move) == promotion) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    public boolean contains(int from, int to) {
+        for (int i = 0; i < size; i++) {
+            if (Move.from(moves[i]) == from && Move.to(moves[i]) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,38 +1,28 @@
 package com.chess.democracy.edition.chess;
 
 public class MoveResult {
-    private final boolean success;
-    private String errorMessage;
-    private final boolean animateKing;
+    private final MoveStatus status;
 
-    public MoveResult(boolean success) {
-        this.success = success;
-        this.animateKing = false;
+    // Shared instances are handed out by MoveStatus.getResult()
+    MoveResult(MoveStatus status) {
+        this.status = status;
     }
 
-    public MoveResult(boolean success, String errorMessage) {
-        this.success = success;
-        this.errorMessage = errorMessage;
-        this.animateKing = false;
-    }
-
-    public MoveResult(boolean success, String errorMessage, boolean animateKing) {
-        this.success = success;
-        this.errorMessage = errorMessage;
-        this.animateKing = animateKing;
+    // Getters
+    public MoveStatus getStatus() {
+        return status;
     }
 
-    // Getters
     public boolean isSuccess() {
-        return success;
+        return status.isSuccess();
     }
 
     public String getErrorMessage() {
-        return errorMessage;
+        return status.getMessage();
     }
 
     public boolean shouldAnimateKing() {
-        return animateKing;
+        return status == MoveStatus.LEAVES_KING_IN_CHECK;
     }
 
 
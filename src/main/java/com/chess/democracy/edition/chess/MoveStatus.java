@@ -0,0 +1,37 @@
+package com.chess.democracy.edition.chess;
+
+/**
+ * Outcome of a move request. Each status owns one shared, immutable {@link MoveResult},
+ * so validating a move never allocates and callers can branch on the status instead of the message.
+ */
+public enum MoveStatus {
+    SUCCESS(true, null),
+    PROMOTION_PENDING(true, "Pawn promotion pending."),
+    NO_PIECE(false, "No piece at the selected starting position."),
+    NOT_YOUR_TURN(false, "It's not your turn."),
+    ILLEGAL_PIECE_MOVE(false, "Invalid move: This move is not permitted for the selected piece."),
+    LEAVES_KING_IN_CHECK(false, "Invalid move: You cannot leave your king in check!"),
+    CAPTURES_OWN_PIECE(false, "Invalid move: Cannot capture your own piece.");
+
+    private final boolean success;
+    private final String message;
+    private final MoveResult result;
+
+    MoveStatus(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+        this.result = new MoveResult(this);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public MoveResult getResult() {
+        return result;
+    }
+}
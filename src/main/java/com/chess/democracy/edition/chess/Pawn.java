@@ -8,6 +8,11 @@ public class Pawn extends ChessPiece {
         this.movedTwoSquaresLastTurn = false;
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.PAWN;
+    }
+
     public boolean hasMovedTwoSquaresLastTurn() {
         return movedTwoSquaresLastTurn;
     }
@@ -0,0 +1,11 @@
+package com.chess.democracy.edition.chess;
+
+public enum PieceType {
+    PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING;
+
+    private static final PieceType[] VALUES = values();
+
+    public static PieceType fromIndex(int index) {
+        return VALUES[index];
+    }
+}
@@ -6,21 +6,24 @@ public class Queen extends ChessPiece {
         super(color, row, col);
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.QUEEN;
+    }
+
     @Override
     public boolean isValidMove(int endRow, int endCol, ChessGameLogic game) {
         if (isSamePosition(endRow, endCol)) {
             return false; // Can't move to the same square
         }
 
-        if (Math.abs(this.getRow() - endRow) == Math.abs(this.getCol() - endCol) ||
-                this.getRow() == endRow || this.getCol() == endCol) {
-            return game.isPathClear(this.getRow(), this.getCol(), endRow, endCol);
-        }
-        return false;
+        return canAttackSquare(endRow, endCol, game);
     }
 
     @Override
     public boolean canAttackSquare(int endRow, int endCol, ChessGameLogic game) {
-        return isValidMove(endRow, endCol, game);
+        int square = BitboardPosition.square(this.getRow(), this.getCol());
+        long attacks = Attacks.queenAttacks(square, game.getPosition().getOccupied());
+        return (attacks & BitboardPosition.bit(BitboardPosition.square(endRow, endCol))) != 0;
     }
 }
@@ -6,23 +6,24 @@ public class Rook extends ChessPiece {
         super(color, row, col);
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.ROOK;
+    }
+
     @Override
     public boolean isValidMove(int endRow, int endCol, ChessGameLogic game) {
         if (isSamePosition(endRow, endCol)) {
             return false; // Can't move to the same square
         }
 
-        if (this.getRow() != endRow && this.getCol() != endCol) {
-            return false;
-        }
-        return game.isPathClear(this.getRow(), this.getCol(), endRow, endCol);
+        return canAttackSquare(endRow, endCol, game);
     }
 
     @Override
     public boolean canAttackSquare(int endRow, int endCol, ChessGameLogic game) {
-        if (this.getRow() != endRow && this.getCol() != endCol) {
-            return false;
-        }
-        return game.isPathClear(this.getRow(), this.getCol(), endRow, endCol);
+        int square = BitboardPosition.square(this.getRow(), this.getCol());
+        long attacks = Attacks.rookAttacks(square, game.getPosition().getOccupied());
+        return (attacks & BitboardPosition.bit(BitboardPosition.square(endRow, endCol))) != 0;
     }
 }
@@ -0,0 +1,53 @@
+package com.chess.democracy.edition.chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of a {@link BitboardPosition}. The keys come from a fixed seed,
+ * so the same position hashes to the same value in every JVM and can be compared across servers.
+ */
+public final class Zobrist {
+    private static final long SEED = 0x5DEECE66DL;
+
+    // Indexed by BitboardPosition piece index (color ordinal * 6 + type ordinal) and square
+    private static final long[][] PIECE_SQUARE = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT_FILE = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long[] squares : PIECE_SQUARE) {
+            for (int square = 0; square < 64; square++) {
+                squares[square] = random.nextLong();
+            }
+        }
+        // No castling rights hashes to zero so an empty board has key 0
+        for (int rights = 1; rights < CASTLING.length; rights++) {
+            CASTLING[rights] = random.nextLong();
+        }
+        for (int file = 0; file < EN_PASSANT_FILE.length; file++) {
+            EN_PASSANT_FILE[file] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(int pieceIndex, int square) {
+        return PIECE_SQUARE[pieceIndex][square];
+    }
+
+    public static long castling(int castlingRights) {
+        return CASTLING[castlingRights];
+    }
+
+    public static long enPassant(int enPassantSquare) {
+        return enPassantSquare == BitboardPosition.NO_SQUARE ? 0L : EN_PASSANT_FILE[BitboardPosition.col(enPassantSquare)];
+    }
+
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+}
@@ -0,0 +1,157 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.PieceColor;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A connected player as {@link GameServer} sees it, whichever way its socket is served.
+ * Decoded frames from the client are passed on to the server; the game, user name and team
+ * are filled in by the HELLO frame, or the game and user name by the SPECTATE frame.
+ */
+abstract class ClientConnection implements FrameHandler {
+    protected final GameServer server;
+    // Written by the transport's writer; see OutboundQueue for the bounds
+    protected final OutboundQueue outbound;
+    private volatile int gameID;
+    private volatile String userName;
+    private volatile PieceColor team;
+    private volatile boolean spectator;
+
+    ClientConnection(GameServer server) {
+        this.server = server;
+        this.outbound = new OutboundQueue(server);
+    }
+
+    int getGameID() {
+        return gameID;
+    }
+
+    String getUserName() {
+        return userName;
+    }
+
+    PieceColor getTeam() {
+        return team;
+    }
+
+    boolean hasJoined() {
+        return userName != null;
+    }
+
+    boolean isSpectator() {
+        return spectator;
+    }
+
+    void join(int gameID, String userName, PieceColor team) {
+        this.gameID = gameID;
+        this.team = team;
+        this.userName = userName;
+    }
+
+    void spectate(int gameID, String userName) {
+        this.gameID = gameID;
+        this.spectator = true;
+        this.userName = userName;
+    }
+
+    /**
+     * Queues an encoded frame for the client; called from any thread. The same buffer may be sent
+     * to many clients. A client that has fallen too far behind is disconnected here instead.
+     */
+    final void sendFrame(ByteBuffer frame) {
+        if (isClosed()) {
+            return;
+        }
+        switch (outbound.offer(frame)) {
+            case QUEUED:
+                requestFlush();
+                break;
+            case CONGESTED:
+                requestFlush();
+                checkSlowConsumer();
+                break;
+            case COALESCED:
+                server.recordCoalesced();
+                requestFlush();
+                break;
+            case DROPPED:
+                server.recordDropped();
+                break;
+            case EVICT:
+                evict();
+                break;
+        }
+    }
+
+    // A congested client in a quiet room is offered no frames to notice the timeout with, so a timer checks it until it catches up
+    private void checkSlowConsumer() {
+        long remaining = outbound.getMillisUntilEviction();
+        if (isClosed() || remaining == Long.MAX_VALUE) {
+            return;
+        }
+        if (remaining < 0) {
+            evict();
+        } else {
+            // The wheel thread only posts the check; closing the client happens on the shard of its game
+            server.getTurnScheduler().schedule(
+                    () -> server.executeOnShard(gameID, this::checkSlowConsumer), remaining + 1, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void evict() {
+        server.recordEvicted();
+        System.err.println("Disconnecting slow client " + userName + " with "
+                + outbound.getQueuedBytes() + " bytes queued");
+        close();
+    }
+
+    // Makes the transport write out the queued frames on its own thread
+    abstract void requestFlush();
+
+    abstract boolean isClosed();
+
+    abstract void close();
+
+    @Override
+    public void onHello(int gameID, PieceColor team, String userName, long sessionToken, int lastSequence) {
+        if (hasJoined() || !server.handleHello(this, gameID, team, userName, sessionToken, lastSequence)) {
+            close();
+        }
+    }
+
+    @Override
+    public void onSpectate(int gameID, String userName) {
+        if (hasJoined() || !server.handleSpectate(this, gameID, userName)) {
+            close();
+        }
+    }
+
+    // Spectators only follow the chat; a large audience would drown out the players
+    @Override
+    public void onChat(String sender, String text) {
+        if (hasJoined() && !spectator) {
+            server.handleChat(this, text);
+        }
+    }
+
+    @Override
+    public void onVote(int turn, int move, VoteStatus status) {
+        if (hasJoined()) {
+            server.handleVote(this, turn, move);
+        }
+    }
+
+    @Override
+    public void onSnapshotRequest() {
+        if (hasJoined()) {
+            server.handleSnapshotRequest(this);
+        }
+    }
+
+    @Override
+    public void onPing(long timestamp) {
+        sendFrame(FrameCodec.pong(timestamp));
+    }
+}
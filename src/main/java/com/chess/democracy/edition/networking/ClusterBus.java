@@ -0,0 +1,373 @@
+package com.chess.democracy.edition.networking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * TCP links between the nodes of a cluster of {@link GameServer}s.
+ *
+ * <p>A player connects to any node. If another node owns the player's game, this node is the
+ * player's edge: it opens a session on a link to the owner and forwards the player's frames there.
+ * On the owner, the session is a {@link ClientConnection} like any local player, so the game room
+ * does not know the difference; the frames it sends the player come back over the same link and
+ * are queued on the player's real connection, where the usual backpressure applies.
+ *
+ * <p>Each node connects to an owner the first time one of its players needs it, so there is one
+ * link per direction between two nodes. The connect runs on the link's own thread, never on the
+ * thread serving the player; messages for the owner wait in the link until it is up, and if it
+ * cannot be reached, the players waiting on it are disconnected. Bus messages are a 4-byte length, a type byte, an 8-byte
+ * session ID and, for frames, a protocol frame exactly as {@link FrameCodec} encodes it.
+ */
+final class ClusterBus {
+    // Edge to owner: a frame from the player, and the player having disconnected
+    private static final byte CLIENT_FRAME = 1;
+    private static final byte CLIENT_CLOSED = 2;
+    // Owner to edge: a frame for the player, and the owner having dropped the player
+    private static final byte SERVER_FRAME = 3;
+    private static final byte SESSION_CLOSED = 4;
+
+    // Type byte and session ID, after the length
+    private static final int MESSAGE_HEADER_SIZE = 1 + 8;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    // Bytes a link may have waiting to be written; a node that falls this far behind has its link closed
+    private static final long MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final GameServer server;
+    private final ClusterRouter router;
+    private final ServerSocket busSocket;
+    // Links this node opened, by owner node
+    private final AtomicReferenceArray<Link> owners;
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+
+    // Sessions of the players this node is the edge for
+    private final AtomicLong nextSession = new AtomicLong();
+    private final Map<ClientConnection, Long> sessionIds = new ConcurrentHashMap<>();
+    private final Map<Long, ClientConnection> sessions = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    ClusterBus(GameServer server, ClusterRouter router) throws IOException {
+        this.server = server;
+        this.router = router;
+        this.owners = new AtomicReferenceArray<>(router.getNodeCount());
+        busSocket = new ServerSocket();
+        busSocket.bind(router.getBusAddress(router.getLocalNode()));
+        Thread.ofVirtual().name("cluster-bus-accept").start(this::acceptLinks);
+    }
+
+    boolean isLocal(int gameID) {
+        return router.isLocal(gameID);
+    }
+
+    /**
+     * Opens a session for a player whose game lives on another node. Returns at once; the
+     * player's frames are held by the link while it connects.
+     *
+     * @param hello the player's HELLO or SPECTATE frame, the first frame of the session.
+     * @return false if the link to the owner has already failed.
+     */
+    boolean open(ClientConnection client, ByteBuffer hello) {
+        Link link = ownerLink(router.ownerOf(client.getGameID()));
+        long session = nextSession.incrementAndGet();
+        sessions.put(session, client);
+        sessionIds.put(client, session);
+        link.players.add(client);
+        link.send(CLIENT_FRAME, session, hello);
+        // A link that failed before the session was listed did not disconnect the player
+        return !link.closed.get();
+    }
+
+    // Passes a frame from a player to the owner of its game
+    void forward(ClientConnection client, ByteBuffer frame) {
+        Long session = sessionIds.get(client);
+        Link link = owners.get(router.ownerOf(client.getGameID()));
+        if (session != null && link != null) {
+            link.send(CLIENT_FRAME, session, frame);
+        }
+    }
+
+    void detach(ClientConnection client) {
+        Long session = sessionIds.remove(client);
+        if (session == null) {
+            return;
+        }
+        sessions.remove(session);
+        Link link = owners.get(router.ownerOf(client.getGameID()));
+        if (link != null) {
+            link.players.remove(client);
+            link.send(CLIENT_CLOSED, session, EMPTY);
+        }
+    }
+
+    void stop() {
+        running = false;
+        try {
+            busSocket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        for (Link link : links) {
+            link.close();
+        }
+    }
+
+    // Only creates the link, which connects on its own thread, so the lock is never held over I/O
+    private synchronized Link ownerLink(int node) {
+        Link link = owners.get(node);
+        if (link == null || link.closed.get()) {
+            link = new Link(new Socket(), node);
+            owners.set(node, link);
+        }
+        return link;
+    }
+
+    private void acceptLinks() {
+        while (running) {
+            try {
+                new Link(busSocket.accept(), -1);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting cluster link: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * One TCP connection to another node. A link this node opened leads to the owner of some of
+     * its players' games; a link it accepted carries the sessions of another node's players.
+     */
+    private final class Link {
+        // The owner node a link this node opened leads to, or -1 for an accepted link
+        private final int ownerNode;
+        private final Socket socket;
+        // Set by the writer once the socket is connected, before the reader starts
+        private DataInputStream in;
+        private OutputStream out;
+        private final BlockingQueue<ByteBuffer> writes = new LinkedBlockingQueue<>();
+        // Bytes in writes, which bound the queue
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Sessions hosted here for the node at the other end; only on accepted links
+        private final Map<Long, RemoteConnection> remotes = new ConcurrentHashMap<>();
+        // Players of this node with a session on the owner; only on links this node opened
+        private final Set<ClientConnection> players = ConcurrentHashMap.newKeySet();
+        private final Thread writer;
+
+        // An accepted socket is already connected; a link to an owner connects on its writer thread
+        Link(Socket socket, int ownerNode) {
+            this.socket = socket;
+            this.ownerNode = ownerNode;
+            links.add(this);
+            writer = Thread.ofVirtual().name("cluster-bus-writer").start(this::run);
+        }
+
+        private void run() {
+            try {
+                if (!socket.isConnected()) {
+                    socket.connect(router.getBusAddress(ownerNode), CONNECT_TIMEOUT_MILLIS);
+                }
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                if (!closed.get()) {
+                    System.err.println("Cannot reach cluster node " + ownerNode + ": " + e.getMessage());
+                }
+                close();
+                return;
+            }
+            Thread.ofVirtual().name("cluster-bus-reader").start(this::readMessages);
+            writeMessages();
+        }
+
+        void send(byte type, long session, ByteBuffer frame) {
+            if (closed.get()) {
+                return;
+            }
+            ByteBuffer message = ByteBuffer.allocate(4 + MESSAGE_HEADER_SIZE + frame.remaining());
+            message.putInt(MESSAGE_HEADER_SIZE + frame.remaining()).put(type).putLong(session).put(frame.duplicate()).flip();
+            // The players' own queues already absorb slow players, so a backlog here means the other node is stuck
+            if (queuedBytes.addAndGet(message.limit()) > MAX_QUEUED_BYTES) {
+                System.err.println("Closing cluster link with " + queuedBytes.get() + " bytes queued");
+                close();
+                return;
+            }
+            writes.add(message);
+        }
+
+        private void writeMessages() {
+            List<ByteBuffer> batch = new ArrayList<>();
+            try {
+                while (!closed.get()) {
+                    batch.add(writes.take());
+                    writes.drainTo(batch);
+                    for (ByteBuffer message : batch) {
+                        out.write(message.array(), message.arrayOffset() + message.position(), message.remaining());
+                        queuedBytes.addAndGet(-message.limit());
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void readMessages() {
+            try {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length < MESSAGE_HEADER_SIZE || length > MESSAGE_HEADER_SIZE + FrameCodec.HEADER_SIZE + FrameCodec.MAX_PAYLOAD_SIZE) {
+                        throw new ProtocolException("Invalid bus message length " + length);
+                    }
+                    byte type = in.readByte();
+                    long session = in.readLong();
+                    byte[] frame = new byte[length - MESSAGE_HEADER_SIZE];
+                    in.readFully(frame);
+                    receive(type, session, ByteBuffer.wrap(frame));
+                }
+            } catch (IOException e) {
+                if (running && !closed.get()) {
+                    System.err.println("Cluster link error: " + e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void receive(byte type, long session, ByteBuffer frame) throws ProtocolException {
+            switch (type) {
+                case CLIENT_FRAME: {
+                    RemoteConnection remote = remotes.computeIfAbsent(session, id -> new RemoteConnection(this, id));
+                    try {
+                        FrameCodec.decode(frame, remote);
+                    } catch (ProtocolException e) {
+                        // Only this player's session is at fault, not the link
+                        remote.close();
+                    }
+                    break;
+                }
+                case CLIENT_CLOSED: {
+                    RemoteConnection remote = remotes.remove(session);
+                    if (remote != null) {
+                        remote.disconnected();
+                    }
+                    break;
+                }
+                case SERVER_FRAME: {
+                    ClientConnection client = sessions.get(session);
+                    if (client != null) {
+                        client.sendFrame(frame);
+                    }
+                    break;
+                }
+                case SESSION_CLOSED: {
+                    ClientConnection client = sessions.remove(session);
+                    if (client != null) {
+                        sessionIds.remove(client);
+                        client.close();
+                    }
+                    break;
+                }
+                default:
+                    throw new ProtocolException("Unknown bus message type " + type);
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            links.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            writer.interrupt();
+            // The other node's players lose their games here, and ours lose theirs on the owner
+            for (RemoteConnection remote : remotes.values()) {
+                remote.disconnected();
+            }
+            remotes.clear();
+            // Only this link's players; a new link to the same owner may already be carrying others
+            for (ClientConnection client : players) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * A player connected to another node, as the owner's game room sees it. Frames for the player
+     * are passed straight to the link; the edge node queues them for the player's socket.
+     */
+    private final class RemoteConnection extends ClientConnection {
+        private final Link link;
+        private final long session;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        RemoteConnection(Link link, long session) {
+            super(ClusterBus.this.server);
+            this.link = link;
+            this.session = session;
+        }
+
+        // Called from the room's shard and the link reader, so frames are moved to the link one caller at a time
+        @Override
+        synchronized void requestFlush() {
+            ByteBuffer frame;
+            while ((frame = outbound.peek()) != null) {
+                link.send(SERVER_FRAME, session, frame);
+                outbound.remove();
+            }
+        }
+
+        @Override
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        // The owner drops the player, for example after a second HELLO
+        @Override
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                link.remotes.remove(session);
+                link.send(SESSION_CLOSED, session, EMPTY);
+                server.handleDisconnect(this);
+            }
+        }
+
+        // The player left the edge node, or the link to it failed
+        void disconnected() {
+            if (closed.compareAndSet(false, true)) {
+                server.handleDisconnect(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.chess.democracy.edition.networking;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one node of a game server cluster without the GUI.
+ *
+ * <pre>
+ * ClusterNode &lt;node index&gt; &lt;client host:port&gt; &lt;bus host:port,host:port,...&gt; [mode] [turn millis]
+ * </pre>
+ *
+ * Every node gets the same bus address list; the index says which entry is its own. Players may
+ * connect to the client address of any node.
+ */
+public class ClusterNode {
+
+    // Printed once the node accepts players, for scripts that start several nodes
+    static final String READY = "Cluster node ready";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: ClusterNode <node index> <client host:port> <bus host:port,...> [mode] [turn millis]");
+            System.exit(2);
+        }
+        int node = Integer.parseInt(args[0]);
+        InetSocketAddress clientAddress = ClusterRouter.parseAddress(args[1]);
+        ClusterRouter router = ClusterRouter.parse(args[2], node);
+        ServerMode mode = args.length > 3 ? ServerMode.valueOf(args[3]) : ServerMode.SELECTOR;
+
+        GameServer server = GameServer.getInstance(clientAddress.getHostString(), clientAddress.getPort(), mode, router);
+        if (args.length > 4) {
+            server.setTurnDuration(Long.parseLong(args[4]), TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stopServer));
+        System.out.println(READY + " " + node + " of " + router.getNodeCount());
+
+        // The server's threads are daemons; keep the process alive until it is killed
+        new CountDownLatch(1).await();
+    }
+}
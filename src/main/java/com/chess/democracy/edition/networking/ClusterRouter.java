@@ -0,0 +1,68 @@
+package com.chess.democracy.edition.networking;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which node of a cluster of {@link GameServer}s owns each game. Every node is given the
+ * same list of bus addresses, so every node computes the same owner for a game ID without asking
+ * the others. A game's room only exists on its owner; the other nodes forward the traffic of
+ * their players in that game over the {@link ClusterBus}.
+ */
+public class ClusterRouter {
+    private final List<InetSocketAddress> busAddresses;
+    private final int localNode;
+
+    /**
+     * @param busAddresses the inter-node bus address of every node, in the same order on every node.
+     * @param localNode    the index of this node in busAddresses.
+     */
+    public ClusterRouter(List<InetSocketAddress> busAddresses, int localNode) {
+        if (localNode < 0 || localNode >= busAddresses.size()) {
+            throw new IllegalArgumentException("Node " + localNode + " is not one of " + busAddresses.size() + " nodes");
+        }
+        this.busAddresses = List.copyOf(busAddresses);
+        this.localNode = localNode;
+    }
+
+    /**
+     * Builds a router from a comma-separated list of {@code host:port} bus addresses.
+     */
+    public static ClusterRouter parse(String busAddresses, int localNode) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : busAddresses.split(",")) {
+            addresses.add(parseAddress(address.trim()));
+        }
+        return new ClusterRouter(addresses, localNode);
+    }
+
+    static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port but got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    // Consecutive game IDs go to different nodes, so the games of a busy evening spread evenly
+    public int ownerOf(int gameID) {
+        return Math.floorMod(gameID, busAddresses.size());
+    }
+
+    public boolean isLocal(int gameID) {
+        return ownerOf(gameID) == localNode;
+    }
+
+    public int getLocalNode() {
+        return localNode;
+    }
+
+    public int getNodeCount() {
+        return busAddresses.size();
+    }
+
+    public InetSocketAddress getBusAddress(int node) {
+        return busAddresses.get(node);
+    }
+}
@@ -0,0 +1,381 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.Move;
+import com.chess.democracy.edition.chess.PieceColor;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes the length-prefixed binary frames of the game protocol. Every frame is a
+ * 4-byte payload length, a {@link FrameType} code byte and the payload:
+ *
+ * <pre>
+ * HELLO        int gameID, byte team, string userName, long sessionToken, int lastSequence
+ * CHAT         string sender, string text
+ * VOTE         int turn, short move, byte status
+ * TURN_OPEN    int turn, byte team, int millisRemaining
+ * MOVE_COMMIT  int turn, short move, int votes
+ * STATE_DELTA  int turn, int move, long positionKey
+ * SNAPSHOT     int turn, string fen
+ * PING, PONG   long timestamp
+ * SNAPSHOT_REQUEST  no payload
+ * SESSION      long sessionToken, int sequence
+ * SEQUENCED    int sequence, frame
+ * SPECTATE     int gameID, string userName
+ * VOTE_PROGRESS  int turn, int revision, int voters, byte full, byte count, count * (short move, int votes)
+ * </pre>
+ *
+ * Moves are {@link Move} ints; ballots and commits only carry the 15-bit {@link Move#key(int)}.
+ * Teams are {@link PieceColor} ordinals and VOTE statuses {@link VoteStatus} ordinals, with -1
+ * for none. Strings are an unsigned short byte count followed by UTF-8. A SEQUENCED frame wraps
+ * one complete frame of any other type. A VOTE_PROGRESS frame that is not full only lists the
+ * moves whose votes changed since the previous revision, with 0 for a move that left the list.
+ */
+public final class FrameCodec {
+    public static final int HEADER_SIZE = 5;
+    public static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+    public static final int MAX_STRING_BYTES = 0xFFFF;
+    // Longest user name and chat line the server relays, so a chat frame with its sender and
+    // sequence number always stays well within MAX_PAYLOAD_SIZE
+    public static final int MAX_USER_NAME_BYTES = 64;
+    public static final int MAX_CHAT_BYTES = 4 * 1024;
+
+    private static final int MOVE_KEY_MASK = 0x7FFF;
+
+    private static final PieceColor[] TEAMS = PieceColor.values();
+    private static final VoteStatus[] VOTE_STATUSES = VoteStatus.values();
+
+    private FrameCodec() {
+    }
+
+    public static ByteBuffer hello(int gameID, PieceColor team, String userName) {
+        return hello(gameID, team, userName, 0, 0);
+    }
+
+    // Resumes the session of the token if the server still has it; a token of 0 starts a new one
+    public static ByteBuffer hello(int gameID, PieceColor team, String userName, long sessionToken, int lastSequence) {
+        byte[] name = utf8(userName);
+        ByteBuffer frame = allocate(FrameType.HELLO, 4 + 1 + 2 + name.length + 8 + 4);
+        frame.putInt(gameID).put(teamCode(team));
+        putString(frame, name);
+        frame.putLong(sessionToken).putInt(lastSequence);
+        return frame.flip();
+    }
+
+    public static ByteBuffer spectate(int gameID, String userName) {
+        byte[] name = utf8(userName);
+        ByteBuffer frame = allocate(FrameType.SPECTATE, 4 + 2 + name.length);
+        frame.putInt(gameID);
+        putString(frame, name);
+        return frame.flip();
+    }
+
+    public static ByteBuffer chat(String sender, String text) {
+        byte[] senderBytes = utf8(sender);
+        byte[] textBytes = utf8(text);
+        ByteBuffer frame = allocate(FrameType.CHAT, 2 + senderBytes.length + 2 + textBytes.length);
+        putString(frame, senderBytes);
+        putString(frame, textBytes);
+        return frame.flip();
+    }
+
+    // A ballot when status is null, otherwise the server's answer to one
+    public static ByteBuffer vote(int turn, int move, VoteStatus status) {
+        ByteBuffer frame = allocate(FrameType.VOTE, 4 + 2 + 1);
+        frame.putInt(turn).putShort((short) Move.key(move)).put(status == null ? -1 : (byte) status.ordinal());
+        return frame.flip();
+    }
+
+    public static ByteBuffer turnOpen(int turn, PieceColor team, long millisRemaining) {
+        ByteBuffer frame = allocate(FrameType.TURN_OPEN, 4 + 1 + 4);
+        frame.putInt(turn).put(teamCode(team)).putInt((int) Math.min(millisRemaining, Integer.MAX_VALUE));
+        return frame.flip();
+    }
+
+    public static ByteBuffer moveCommit(int turn, int move, int votes) {
+        ByteBuffer frame = allocate(FrameType.MOVE_COMMIT, 4 + 2 + 4);
+        frame.putInt(turn).putShort((short) Move.key(move)).putInt(votes);
+        return frame.flip();
+    }
+
+    public static ByteBuffer stateDelta(int turn, int move, long positionKey) {
+        ByteBuffer frame = allocate(FrameType.STATE_DELTA, 4 + 4 + 8);
+        frame.putInt(turn).putInt(move).putLong(positionKey);
+        return frame.flip();
+    }
+
+    /**
+     * Encodes the standing of a vote.
+     *
+     * @param full  true if the moves are the whole list, false if they only update the previous revision.
+     * @param count the number of moves to take from the start of moves and votes.
+     */
+    public static ByteBuffer voteProgress(int turn, int revision, int voters, boolean full, int[] moves, int[] votes, int count) {
+        if (count > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many moves for a frame: " + count);
+        }
+        ByteBuffer frame = allocate(FrameType.VOTE_PROGRESS, 4 + 4 + 4 + 1 + 1 + count * (2 + 4));
+        frame.putInt(turn).putInt(revision).putInt(voters).put((byte) (full ? 1 : 0)).put((byte) count);
+        for (int i = 0; i < count; i++) {
+            frame.putShort((short) Move.key(moves[i])).putInt(votes[i]);
+        }
+        return frame.flip();
+    }
+
+    public static ByteBuffer snapshot(int turn, String fen) {
+        byte[] fenBytes = utf8(fen);
+        ByteBuffer frame = allocate(FrameType.SNAPSHOT, 4 + 2 + fenBytes.length);
+        frame.putInt(turn);
+        putString(frame, fenBytes);
+        return frame.flip();
+    }
+
+    public static ByteBuffer ping(long timestamp) {
+        return allocate(FrameType.PING, 8).putLong(timestamp).flip();
+    }
+
+    public static ByteBuffer pong(long timestamp) {
+        return allocate(FrameType.PONG, 8).putLong(timestamp).flip();
+    }
+
+    public static ByteBuffer snapshotRequest() {
+        return allocate(FrameType.SNAPSHOT_REQUEST, 0).flip();
+    }
+
+    public static ByteBuffer session(long sessionToken, int sequence) {
+        return allocate(FrameType.SESSION, 8 + 4).putLong(sessionToken).putInt(sequence).flip();
+    }
+
+    /**
+     * Wraps an encoded frame with its sequence number; the frame itself is left untouched.
+     */
+    public static ByteBuffer sequenced(int sequence, ByteBuffer frame) {
+        return allocate(FrameType.SEQUENCED, 4 + frame.remaining()).putInt(sequence).put(frame.duplicate()).flip();
+    }
+
+    /**
+     * Decodes and dispatches every complete frame in the buffer. On return the buffer's position
+     * is at the start of the first incomplete frame, so the caller can compact it and read more.
+     *
+     * @param buffer  bytes read from the connection, ready for reading.
+     * @param handler the receiver of the decoded frames.
+     * @return the total size of the incomplete frame at the position, or 0 if the buffer was used up;
+     * a reader must be able to hold that many bytes to make progress.
+     * @throws ProtocolException if a frame is malformed; the connection cannot be trusted after that.
+     */
+    public static int decode(ByteBuffer buffer, FrameHandler handler) throws ProtocolException {
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+                throw new ProtocolException("Invalid frame length " + length);
+            }
+            if (buffer.remaining() < HEADER_SIZE + length) {
+                return HEADER_SIZE + length;
+            }
+            FrameType type = FrameType.fromCode(buffer.get(start + 4));
+            if (type == null) {
+                throw new ProtocolException("Unknown frame type " + buffer.get(start + 4));
+            }
+
+            // Limit reads to this frame's payload instead of slicing a new buffer
+            int end = start + HEADER_SIZE + length;
+            int limit = buffer.limit();
+            buffer.limit(end).position(start + HEADER_SIZE);
+            Runnable event;
+            try {
+                event = parse(type, buffer, handler);
+            } catch (BufferUnderflowException | IllegalArgumentException | ProtocolException e) {
+                throw new ProtocolException("Malformed " + type + " frame");
+            } finally {
+                buffer.limit(limit);
+            }
+            buffer.position(end);
+            // Outside the try, so an exception from the handler surfaces as itself rather than as a bad frame
+            event.run();
+        }
+        return buffer.hasRemaining() ? HEADER_SIZE : 0;
+    }
+
+    // Reads a frame's payload and returns the handler call it stands for
+    private static Runnable parse(FrameType type, ByteBuffer payload, FrameHandler handler) throws ProtocolException {
+        switch (type) {
+            case HELLO: {
+                int gameID = payload.getInt();
+                PieceColor team = team(payload.get());
+                String userName = getString(payload);
+                long sessionToken = payload.getLong();
+                int lastSequence = payload.getInt();
+                return () -> handler.onHello(gameID, team, userName, sessionToken, lastSequence);
+            }
+            case SPECTATE: {
+                int gameID = payload.getInt();
+                String userName = getString(payload);
+                return () -> handler.onSpectate(gameID, userName);
+            }
+            case CHAT: {
+                String sender = getString(payload);
+                String text = getString(payload);
+                return () -> handler.onChat(sender, text);
+            }
+            case VOTE: {
+                int turn = payload.getInt();
+                int move = payload.getShort() & MOVE_KEY_MASK;
+                byte code = payload.get();
+                VoteStatus status = code < 0 || code >= VOTE_STATUSES.length ? null : VOTE_STATUSES[code];
+                return () -> handler.onVote(turn, move, status);
+            }
+            case TURN_OPEN: {
+                int turn = payload.getInt();
+                PieceColor team = team(payload.get());
+                int millisRemaining = payload.getInt();
+                return () -> handler.onTurnOpen(turn, team, millisRemaining);
+            }
+            case MOVE_COMMIT: {
+                int turn = payload.getInt();
+                int move = payload.getShort() & MOVE_KEY_MASK;
+                int votes = payload.getInt();
+                return () -> handler.onMoveCommit(turn, move, votes);
+            }
+            case STATE_DELTA: {
+                int turn = payload.getInt();
+                int move = payload.getInt();
+                long positionKey = payload.getLong();
+                return () -> handler.onStateDelta(turn, move, positionKey);
+            }
+            case VOTE_PROGRESS: {
+                int turn = payload.getInt();
+                int revision = payload.getInt();
+                int voters = payload.getInt();
+                boolean full = payload.get() != 0;
+                int count = payload.get();
+                if (count < 0 || count * (2 + 4) > payload.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                int[] moves = new int[count];
+                int[] votes = new int[count];
+                for (int i = 0; i < count; i++) {
+                    moves[i] = payload.getShort() & MOVE_KEY_MASK;
+                    votes[i] = payload.getInt();
+                }
+                return () -> handler.onVoteProgress(turn, revision, voters, full, moves, votes);
+            }
+            case SNAPSHOT: {
+                int turn = payload.getInt();
+                String fen = getString(payload);
+                return () -> handler.onSnapshot(turn, fen);
+            }
+            case PING: {
+                long timestamp = payload.getLong();
+                return () -> handler.onPing(timestamp);
+            }
+            case PONG: {
+                long timestamp = payload.getLong();
+                return () -> handler.onPong(timestamp);
+            }
+            case SNAPSHOT_REQUEST:
+                return handler::onSnapshotRequest;
+            case SESSION: {
+                long sessionToken = payload.getLong();
+                int sequence = payload.getInt();
+                return () -> handler.onSession(sessionToken, sequence);
+            }
+            case SEQUENCED: {
+                int sequence = payload.getInt();
+                // Exactly one frame, and not another SEQUENCED one, so nesting cannot go deep
+                if (payload.remaining() < HEADER_SIZE || payload.getInt(payload.position()) != payload.remaining() - HEADER_SIZE) {
+                    throw new IllegalArgumentException("Bad sequenced frame");
+                }
+                FrameType inner = FrameType.fromCode(payload.get(payload.position() + 4));
+                if (inner == null || inner == FrameType.SEQUENCED) {
+                    throw new IllegalArgumentException("Bad sequenced frame");
+                }
+                payload.position(payload.position() + HEADER_SIZE);
+                Runnable event = parse(inner, payload, handler);
+                return () -> {
+                    handler.onSequence(sequence);
+                    event.run();
+                };
+            }
+            default:
+                return () -> { };
+        }
+    }
+
+    /**
+     * Reads the type of an encoded frame without moving its position. For a SEQUENCED frame this
+     * is the type of the frame inside, which is what decides how the frame is delivered.
+     *
+     * @return the type, or null if the type byte is unknown.
+     */
+    public static FrameType typeOf(ByteBuffer frame) {
+        FrameType type = FrameType.fromCode(frame.get(frame.position() + 4));
+        if (type == FrameType.SEQUENCED) {
+            return FrameType.fromCode(frame.get(frame.position() + HEADER_SIZE + 4 + 4));
+        }
+        return type;
+    }
+
+    private static ByteBuffer allocate(FrameType type, int payloadSize) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        return frame.putInt(payloadSize).put(type.getCode());
+    }
+
+    static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Shortens a string to at most the given number of UTF-8 bytes without splitting a character.
+     */
+    static String truncate(String text, int maxBytes) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return text;
+        }
+        int end = maxBytes;
+        // Back up over continuation bytes to the start of the character that does not fit
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for a frame: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer frame, byte[] bytes) {
+        frame.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getShort() & 0xFFFF;
+        if (length > payload.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (payload.hasArray()) {
+            String text = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+            payload.position(payload.position() + length);
+            return text;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte teamCode(PieceColor team) {
+        return team == null ? -1 : (byte) team.ordinal();
+    }
+
+    private static PieceColor team(byte code) {
+        return code < 0 || code >= TEAMS.length ? null : TEAMS[code];
+    }
+}
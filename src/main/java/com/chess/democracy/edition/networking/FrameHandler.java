@@ -0,0 +1,61 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.PieceColor;
+
+/**
+ * Receives decoded frames from {@link FrameCodec}. Fields arrive as primitives, so only frames
+ * that carry text or lists allocate. Every method does nothing by default; implement the ones a side uses.
+ */
+public interface FrameHandler {
+
+    // team is null for a client that is not on a team; sessionToken is 0 for a new session
+    default void onHello(int gameID, PieceColor team, String userName, long sessionToken, int lastSequence) {
+    }
+
+    default void onSpectate(int gameID, String userName) {
+    }
+
+    // sender is empty in frames sent by clients; the server fills in the user name
+    default void onChat(String sender, String text) {
+    }
+
+    // status is null for a ballot sent by a client
+    default void onVote(int turn, int move, VoteStatus status) {
+    }
+
+    default void onTurnOpen(int turn, PieceColor team, long millisRemaining) {
+    }
+
+    default void onMoveCommit(int turn, int move, int votes) {
+    }
+
+    default void onStateDelta(int turn, int move, long positionKey) {
+    }
+
+    // moves are move keys; see VoteProgress for keeping the list from full and partial frames
+    default void onVoteProgress(int turn, int revision, int voters, boolean full, int[] moves, int[] votes) {
+    }
+
+    default void onSnapshot(int turn, String fen) {
+    }
+
+    default void onSnapshotRequest() {
+    }
+
+    default void onSession(long sessionToken, int sequence) {
+    }
+
+    // Called just before the frame the sequence number came with
+    default void onSequence(int sequence) {
+    }
+
+    default void onPing(long timestamp) {
+    }
+
+    default void onPong(long timestamp) {
+    }
+
+    // Not a frame: called by GameClient once its connection has ended
+    default void onDisconnected() {
+    }
+}
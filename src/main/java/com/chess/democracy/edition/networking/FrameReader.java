@@ -0,0 +1,48 @@
+package com.chess.democracy.edition.networking;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads frames one at a time from a blocking stream into a reused buffer and hands them to
+ * {@link FrameCodec#decode}.
+ */
+public class FrameReader {
+    private final DataInputStream in;
+    private byte[] buffer = new byte[1024];
+
+    public FrameReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Blocks until a whole frame has arrived and dispatches it.
+     *
+     * @return false if the stream ended cleanly between frames.
+     * @throws IOException if reading fails, the stream ends inside a frame or the frame is malformed.
+     */
+    public boolean readFrame(FrameHandler handler) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (length < 0 || length > FrameCodec.MAX_PAYLOAD_SIZE) {
+            throw new ProtocolException("Invalid frame length " + length);
+        }
+        int size = FrameCodec.HEADER_SIZE + length;
+        if (size > buffer.length) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+        ByteBuffer frame = ByteBuffer.wrap(buffer, 0, size);
+        frame.putInt(0, length);
+        in.readFully(buffer, 4, size - 4);
+        FrameCodec.decode(frame, handler);
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package com.chess.democracy.edition.networking;
+
+/**
+ * Message types of the binary protocol spoken between {@link GameServer} and {@link GameClient}.
+ * The code is the type byte on the wire; see {@link FrameCodec} for the payload of each type.
+ */
+public enum FrameType {
+    // Client joining a game, always the first frame of a connection
+    HELLO(1, Congestion.DELIVER),
+    CHAT(2, Congestion.DROP),
+    // A ballot from a client, or the server's answer to one
+    VOTE(3, Congestion.DELIVER),
+    // Voting has opened on the next move; only the latest one matters
+    TURN_OPEN(4, Congestion.COALESCE),
+    // Voting has closed and the winning move was played
+    MOVE_COMMIT(5, Congestion.DELIVER),
+    // The move that changed the position, with the resulting position key
+    STATE_DELTA(6, Congestion.DELIVER),
+    // The full position, sent to joining clients, every few moves and on request
+    SNAPSHOT(7, Congestion.DELIVER),
+    PING(8, Congestion.DROP),
+    PONG(9, Congestion.DROP),
+    // A client whose position no longer matches the deltas asking for a SNAPSHOT
+    SNAPSHOT_REQUEST(10, Congestion.DELIVER),
+    // The token a client resumes its session with after a reconnect
+    SESSION(11, Congestion.DELIVER),
+    // A game broadcast with its sequence number; queued by the policy of the frame inside
+    SEQUENCED(12, Congestion.DELIVER),
+    // Joins a game as a spectator, who follows the game but neither votes nor chats
+    SPECTATE(13, Congestion.DELIVER),
+    // The most voted moves of the open turn, a few times a second at most; the next full list repairs a gap
+    VOTE_PROGRESS(14, Congestion.DROP);
+
+    /**
+     * What the server does with a frame for a client whose outbound queue is over its high watermark.
+     */
+    public enum Congestion {
+        // Queued regardless; the client's game state depends on it
+        DELIVER,
+        // Replaces the queued frame of the same type that has not been written yet
+        COALESCE,
+        // Not sent to that client at all
+        DROP
+    }
+
+    private static final FrameType[] BY_CODE = new FrameType[16];
+
+    static {
+        for (FrameType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+    private final Congestion congestion;
+
+    FrameType(int code, Congestion congestion) {
+        this.code = (byte) code;
+        this.congestion = congestion;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public Congestion getCongestion() {
+        return congestion;
+    }
+
+    /**
+     * Looks a type up by its wire code.
+     *
+     * @return the type, or null if the code is unknown.
+     */
+    public static FrameType fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
@@ -1,6 +1,358 @@
 package com.chess.democracy.edition.networking;
 
-public class GameClient {
-    //to be implemented
+import com.chess.democracy.edition.chess.PieceColor;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client side of the game protocol, used by the UI as well as headless bots and benchmarks.
+ *
+ * <p>Sending never blocks: frames go into a bounded outbound queue and a writer thread drains
+ * everything queued since its last flush into one write. Frames from the server are decoded on a
+ * reader thread and handed to a {@link FrameHandler}, either directly or through a callback
+ * executor such as {@code Platform::runLater}, which then receives one task per burst of frames
+ * instead of one per frame. Both threads are virtual, so a process can run thousands of clients.
+ *
+ * <p>The client remembers its session token and the sequence number of the last broadcast it
+ * received, so after a dropped connection {@link #reconnect()} resumes the session and the server
+ * only sends what was missed.
+ */
+public class GameClient implements Closeable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    // Matches the socket send buffer closely enough that a full batch is one write
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    private final String host;
+    private final int port;
+    private final FrameHandler target;
+    private final Executor callbackExecutor;
+    private final int queueCapacity;
+    private final Socket socket;
+    private final OutputStream out;
+    private final FrameReader in;
+    private final FrameHandler handler;
+    private final BlockingQueue<ByteBuffer> outbound;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Thread reader;
+    private Thread writer;
+
+    // What the HELLO or SPECTATE frame said, to say it again on reconnect
+    private volatile int gameID;
+    private volatile PieceColor team;
+    private volatile String userName;
+    private volatile boolean spectating;
+    // Written by the reader thread as frames arrive, before they reach the handler
+    private volatile long sessionToken;
+    private volatile int lastSequence;
+
+    /**
+     * Connects to a game server; frames are delivered on the reader thread.
+     *
+     * @throws IOException if the connection cannot be made.
+     */
+    public GameClient(String host, int port, FrameHandler handler) throws IOException {
+        this(host, port, handler, null, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Connects to a game server.
+     *
+     * @param handler receives the frames sent by the server.
+     * @param callbackExecutor runs the handler calls in batches, or null to call the handler on the reader thread.
+     * @param queueCapacity the number of frames that may wait to be written before sends are refused.
+     * @throws IOException if the connection cannot be made.
+     */
+    public GameClient(String host, int port, FrameHandler handler, Executor callbackExecutor, int queueCapacity) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.target = handler;
+        this.callbackExecutor = callbackExecutor;
+        this.queueCapacity = queueCapacity;
+        this.handler = new Dispatcher();
+        this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port));
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        in = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Starts delivering frames from the server to the handler and writing queued frames.
+     */
+    public synchronized void start() {
+        if (reader == null) {
+            reader = Thread.ofVirtual().name("game-client-reader").start(this::readFrames);
+            writer = Thread.ofVirtual().name("game-client-writer").start(this::writeFrames);
+        }
+    }
+
+    // Joins a game; must be the first frame sent
+    public boolean hello(int gameID, PieceColor team, String userName) {
+        this.gameID = gameID;
+        this.team = team;
+        this.userName = userName;
+        return send(FrameCodec.hello(gameID, team, userName, sessionToken, lastSequence));
+    }
+
+    /**
+     * Follows a game as a spectator instead of joining it; must be the first frame sent. A
+     * spectator receives the moves, the chat and the vote progress, but cannot vote or chat.
+     */
+    public boolean spectate(int gameID, String userName) {
+        this.gameID = gameID;
+        this.userName = userName;
+        spectating = true;
+        return send(FrameCodec.spectate(gameID, userName));
+    }
+
+    /**
+     * Opens a new connection to the same server and resumes this client's session on it, with the
+     * same handler and settings. The server sends the broadcasts missed since the last one this
+     * client received, or a snapshot if it no longer has them all. If the session has expired the
+     * player simply joins again. A spectator starts watching again from a snapshot.
+     *
+     * @return the new client, already started.
+     * @throws IOException if the connection cannot be made.
+     * @throws IllegalStateException if this client never joined a game.
+     */
+    public GameClient reconnect() throws IOException {
+        if (userName == null) {
+            throw new IllegalStateException("Cannot reconnect before joining a game");
+        }
+        GameClient client = new GameClient(host, port, target, callbackExecutor, queueCapacity);
+        client.sessionToken = sessionToken;
+        client.lastSequence = lastSequence;
+        client.start();
+        if (spectating) {
+            client.spectate(gameID, userName);
+        } else {
+            client.hello(gameID, team, userName);
+        }
+        return client;
+    }
+
+    public boolean sendChat(String text) {
+        return send(FrameCodec.chat("", text));
+    }
+
+    /**
+     * Casts a ballot; the server answers with a VOTE frame carrying the {@link VoteStatus}.
+     *
+     * @param turn the turn announced by the server's TURN_OPEN frame.
+     * @param move the {@link com.chess.democracy.edition.chess.Move}-encoded move.
+     */
+    public boolean sendVote(int turn, int move) {
+        return send(FrameCodec.vote(turn, move, null));
+    }
+
+    // Asks for the full position after a STATE_DELTA did not match the local one
+    public boolean requestSnapshot() {
+        return send(FrameCodec.snapshotRequest());
+    }
+
+    public boolean sendPing() {
+        return send(FrameCodec.ping(System.nanoTime()));
+    }
+
+    /**
+     * Queues a frame for the writer thread.
+     *
+     * @return false if the client is closed or the outbound queue is full, in which case the frame is dropped.
+     */
+    public boolean send(ByteBuffer frame) {
+        return !closed.get() && outbound.offer(frame);
+    }
+
+    public boolean isConnected() {
+        return !closed.get();
+    }
+
+    // Frames still waiting in the outbound queue are dropped
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        synchronized (this) {
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+    }
+
+    private void writeFrames() {
+        List<ByteBuffer> batch = new ArrayList<>();
+        try {
+            while (!closed.get()) {
+                batch.add(outbound.take());
+                outbound.drainTo(batch);
+                for (ByteBuffer frame : batch) {
+                    out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (IOException e) {
+            if (!closed.get()) {
+                System.err.println("Error writing to game server: " + e.getMessage());
+            }
+            close();
+        }
+    }
+
+    private void readFrames() {
+        try {
+            while (in.readFrame(handler)) {
+                // Frames are delivered to the handler
+            }
+        } catch (IOException e) {
+            if (!closed.get()) {
+                System.err.println("Error reading from game server: " + e.getMessage());
+            }
+        } finally {
+            close();
+            handler.onDisconnected();
+        }
+    }
+
+    /**
+     * Notes the session state of each frame on the reader thread, then passes the frame to the
+     * handler. With a callback executor, each frame becomes a task on a queue and one drain of
+     * that queue is submitted at a time, so a burst of frames costs a single executor hand-off.
+     */
+    private final class Dispatcher implements FrameHandler {
+        // Bounds a single drain so a flood of frames cannot stall the executor's thread
+        private static final int MAX_EVENTS_PER_BATCH = 256;
+
+        private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private void post(Runnable event) {
+            if (callbackExecutor == null) {
+                event.run();
+                return;
+            }
+            events.add(event);
+            if (scheduled.compareAndSet(false, true)) {
+                callbackExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < MAX_EVENTS_PER_BATCH; i++) {
+                Runnable event = events.poll();
+                if (event == null) {
+                    break;
+                }
+                event.run();
+            }
+            scheduled.set(false);
+            // Events posted after the last poll would otherwise wait for the next frame
+            if (!events.isEmpty() && scheduled.compareAndSet(false, true)) {
+                callbackExecutor.execute(this::drain);
+            }
+        }
+
+        @Override
+        public void onHello(int gameID, PieceColor team, String userName, long sessionToken, int lastSequence) {
+            post(() -> target.onHello(gameID, team, userName, sessionToken, lastSequence));
+        }
+
+        @Override
+        public void onSession(long sessionToken, int sequence) {
+            GameClient.this.sessionToken = sessionToken;
+            lastSequence = sequence;
+            post(() -> target.onSession(sessionToken, sequence));
+        }
+
+        @Override
+        public void onSequence(int sequence) {
+            // Never moves back, so a resume cannot ask for broadcasts the player already has
+            lastSequence = Math.max(lastSequence, sequence);
+            post(() -> target.onSequence(sequence));
+        }
+
+        @Override
+        public void onSpectate(int gameID, String userName) {
+            post(() -> target.onSpectate(gameID, userName));
+        }
+
+        @Override
+        public void onChat(String sender, String text) {
+            post(() -> target.onChat(sender, text));
+        }
+
+        @Override
+        public void onVote(int turn, int move, VoteStatus status) {
+            post(() -> target.onVote(turn, move, status));
+        }
+
+        @Override
+        public void onTurnOpen(int turn, PieceColor team, long millisRemaining) {
+            post(() -> target.onTurnOpen(turn, team, millisRemaining));
+        }
+
+        @Override
+        public void onMoveCommit(int turn, int move, int votes) {
+            post(() -> target.onMoveCommit(turn, move, votes));
+        }
+
+        @Override
+        public void onStateDelta(int turn, int move, long positionKey) {
+            post(() -> target.onStateDelta(turn, move, positionKey));
+        }
+
+        @Override
+        public void onVoteProgress(int turn, int revision, int voters, boolean full, int[] moves, int[] votes) {
+            post(() -> target.onVoteProgress(turn, revision, voters, full, moves, votes));
+        }
+
+        @Override
+        public void onSnapshot(int turn, String fen) {
+            post(() -> target.onSnapshot(turn, fen));
+        }
+
+        @Override
+        public void onSnapshotRequest() {
+            post(target::onSnapshotRequest);
+        }
+
+        @Override
+        public void onPing(long timestamp) {
+            post(() -> target.onPing(timestamp));
+        }
+
+        @Override
+        public void onPong(long timestamp) {
+            post(() -> target.onPong(timestamp));
+        }
+
+        @Override
+        public void onDisconnected() {
+            post(target::onDisconnected);
+        }
+    }
 }
@@ -0,0 +1,416 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.ChessGameLogic;
+import com.chess.democracy.edition.chess.Move;
+import com.chess.democracy.edition.chess.PieceColor;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One game on the server: its players, its authoritative position and its open vote. A room is
+ * owned by a {@link RoomShard} and every method runs on that shard's thread, so none of the
+ * state below is shared and nothing is locked. Anything arriving from elsewhere, such as a
+ * frame from a client or an expired turn timer, is queued to the shard first.
+ *
+ * <p>Every broadcast carries the room's next sequence number, and the latest ones are kept in a
+ * ring. A player belongs to the room through a session, which outlives the connection by the
+ * server's reconnect grace; a player who comes back with the session's token is sent the
+ * broadcasts it missed from the ring, or a snapshot if they are no longer all there.
+ *
+ * <p>Spectators are not members: the room publishes its broadcasts to a {@link SpectatorGroup},
+ * which fans them out on other threads.
+ *
+ * <p>Once the last player's session has expired and the last spectator has left, the shard drops
+ * the room; a later HELLO for the game starts a new one.
+ *
+ * <p>Nobody is told about each ballot. At most at the server's vote progress rate, the room lists
+ * the most voted moves and sends players and spectators what changed since the previous list. A
+ * full list goes out at the start of each turn and every few updates after, for clients that
+ * joined late or missed an update.
+ */
+final class GameRoom {
+    // Broadcasts kept for reconnecting players; covers a few turns of moves and chat
+    static final int REPLAY_CAPACITY = 256;
+    // Moves listed in the vote progress
+    static final int TOP_MOVES = 5;
+    // Every this many vote progress updates is a full list rather than the changes
+    private static final int FULL_PROGRESS_INTERVAL = 8;
+
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    private final GameServer server;
+    private final RoomShard shard;
+    private final int gameID;
+    private final ChessGameLogic game = new ChessGameLogic();
+    // Connected players, in the order they joined, and the session of each
+    private final Map<ClientConnection, Session> members = new LinkedHashMap<>();
+    // Sessions by token, including those of players who dropped and may still come back
+    private final Map<Long, Session> sessions = new HashMap<>();
+    private final SpectatorGroup spectators;
+
+    // Sequenced broadcasts, each at its sequence number modulo the capacity
+    private final ByteBuffer[] replay = new ByteBuffer[REPLAY_CAPACITY];
+    private int nextSequence = 1;
+
+    // Ballots of the open turn and the deadline that closes them, or null while nobody votes
+    private VoteTally tally;
+    private TurnScheduler.Timeout turnTimer;
+    // Pending vote progress update, or null if no ballot came in since the last one
+    private TurnScheduler.Timeout progressTimer;
+    // The vote progress last sent for the open turn, which the next update is diffed against
+    private final int[] sentMoves = new int[TOP_MOVES];
+    private final int[] sentVotes = new int[TOP_MOVES];
+    private int sentCount;
+    private int sentVoters;
+    // 0 until the first update of the turn
+    private int sentRevision;
+
+    GameRoom(GameServer server, RoomShard shard, int gameID) {
+        this.server = server;
+        this.shard = shard;
+        this.gameID = gameID;
+        this.spectators = new SpectatorGroup(server.getFanoutExecutor());
+    }
+
+    /**
+     * Adds a player to the room, resuming its session if the token names one of the same player.
+     *
+     * @param sessionToken the token from an earlier SESSION frame, or 0 for a new session.
+     * @param lastSequence the last broadcast the player received in that session.
+     */
+    void join(ClientConnection client, long sessionToken, int lastSequence) {
+        // The connection may have closed while its HELLO was queued
+        if (client.isClosed()) {
+            return;
+        }
+        Session session = sessions.get(sessionToken);
+        if (session != null && session.userName.equals(client.getUserName()) && session.team == client.getTeam()) {
+            resume(session, client, lastSequence);
+            return;
+        }
+
+        session = new Session(newToken(), client);
+        sessions.put(session.token, session);
+        members.put(client, session);
+
+        // Bring the new client's board in line with the server's
+        client.sendFrame(snapshotFrame());
+        client.sendFrame(FrameCodec.session(session.token, nextSequence - 1));
+
+        // Notify others that a new user has joined
+        broadcastMessage("System", client.getUserName() + " has joined the chat.");
+        announceTurn(client);
+    }
+
+    // Moves a session to a new connection without telling the others the player was gone
+    private void resume(Session session, ClientConnection client, int lastSequence) {
+        ClientConnection previous = session.connection;
+        if (previous != null) {
+            // The old connection is still open on our side, but the player has moved on
+            members.remove(previous);
+            previous.close();
+        }
+        if (session.expiry != null) {
+            session.expiry.cancel();
+            session.expiry = null;
+        }
+        session.connection = client;
+        members.put(client, session);
+
+        int oldest = Math.max(1, nextSequence - REPLAY_CAPACITY);
+        if (lastSequence >= oldest - 1 && lastSequence < nextSequence) {
+            for (int sequence = lastSequence + 1; sequence < nextSequence; sequence++) {
+                client.sendFrame(replay[sequence % REPLAY_CAPACITY]);
+            }
+        } else {
+            client.sendFrame(snapshotFrame());
+        }
+        client.sendFrame(FrameCodec.session(session.token, nextSequence - 1));
+        // A replayed TURN_OPEN shows the time left back then
+        announceTurn(client);
+    }
+
+    // Adds a spectator; spectators come and go silently, without sessions. A closed one is added
+    // anyway, since its leave is already queued behind this and will remove it
+    void watch(ClientConnection client) {
+        if (tally == null) {
+            spectators.add(client, snapshotFrame());
+        } else if (sentRevision == 0) {
+            spectators.add(client, snapshotFrame(), turnOpenFrame());
+        } else {
+            spectators.add(client, snapshotFrame(), turnOpenFrame(), progressFrame());
+        }
+    }
+
+    void leave(ClientConnection client) {
+        if (client.isSpectator()) {
+            spectators.remove(client);
+            return;
+        }
+        Session session = members.remove(client);
+        if (session == null) {
+            return;
+        }
+        if (members.isEmpty()) {
+            // Nobody is left to vote; the position is kept while players can still return
+            stopVoting();
+        }
+        session.connection = null;
+        int departure = ++session.departures;
+        long grace = server.getReconnectGraceMillis();
+        if (grace <= 0) {
+            expire(session, departure);
+            return;
+        }
+        session.expiry = server.getTurnScheduler().schedule(
+                () -> shard.execute(gameID, room -> room.expire(session, departure)), grace, TimeUnit.MILLISECONDS);
+    }
+
+    // Ends a session whose player did not come back in time
+    private void expire(Session session, int departure) {
+        // The player came back, possibly leaving again since, or the session belongs to a room the shard has dropped
+        if (session.connection != null || session.departures != departure || sessions.get(session.token) != session) {
+            return;
+        }
+        sessions.remove(session.token);
+        broadcastMessage("System", session.userName + " has left the chat.");
+    }
+
+    // Nobody is in the room and no session can be resumed, so the shard can drop it
+    boolean isIdle() {
+        return members.isEmpty() && sessions.isEmpty() && spectators.isEmpty();
+    }
+
+    // Called by the shard as it drops the room, so no timer of the room fires after it
+    void close() {
+        stopVoting();
+        if (progressTimer != null) {
+            progressTimer.cancel();
+            progressTimer = null;
+        }
+    }
+
+    void chat(ClientConnection client, String text) {
+        broadcastMessage(client.getUserName(), text);
+    }
+
+    void vote(ClientConnection client, int turn, int move) {
+        VoteStatus status;
+        if (tally == null || tally.getTurn() != turn) {
+            status = VoteStatus.VOTING_CLOSED;
+        } else if (client.getTeam() != tally.getTeam()) {
+            status = VoteStatus.WRONG_TEAM;
+        } else {
+            status = tally.castVote(client.getUserName(), Move.from(move), Move.to(move), Move.promotion(move));
+        }
+        client.sendFrame(FrameCodec.vote(turn, move, status));
+        if ((status == VoteStatus.ACCEPTED || status == VoteStatus.CHANGED) && progressTimer == null) {
+            progressTimer = server.getTurnScheduler().schedule(
+                    () -> shard.execute(gameID, GameRoom::publishProgress), server.getVoteProgressMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void sendSnapshot(ClientConnection client) {
+        if (client.isSpectator()) {
+            spectators.send(client, snapshotFrame());
+        } else {
+            client.sendFrame(snapshotFrame());
+        }
+    }
+
+    // Tells everybody where the vote stands, once for all the ballots since the last update
+    private void publishProgress() {
+        progressTimer = null;
+        if (tally == null) {
+            return;
+        }
+        int[] moves = new int[TOP_MOVES];
+        int[] votes = new int[TOP_MOVES];
+        int count = tally.getTopMoves(moves, votes);
+        int voters = tally.getVoterCount();
+        int revision = sentRevision + 1;
+
+        ByteBuffer frame;
+        if (sentRevision == 0 || revision % FULL_PROGRESS_INTERVAL == 0) {
+            frame = FrameCodec.voteProgress(tally.getTurn(), revision, voters, true, moves, votes, count);
+        } else {
+            // Moves whose count changed or that joined the list, then those that left it
+            int[] changedMoves = new int[TOP_MOVES * 2];
+            int[] changedVotes = new int[TOP_MOVES * 2];
+            int changed = 0;
+            for (int i = 0; i < count; i++) {
+                int sent = indexOf(sentMoves, sentCount, moves[i]);
+                if (sent < 0 || sentVotes[sent] != votes[i]) {
+                    changedMoves[changed] = moves[i];
+                    changedVotes[changed++] = votes[i];
+                }
+            }
+            for (int i = 0; i < sentCount; i++) {
+                if (indexOf(moves, count, sentMoves[i]) < 0) {
+                    changedMoves[changed] = sentMoves[i];
+                    changedVotes[changed++] = 0;
+                }
+            }
+            // Ballots that were moved away and back again
+            if (changed == 0 && voters == sentVoters) {
+                return;
+            }
+            frame = FrameCodec.voteProgress(tally.getTurn(), revision, voters, false, changedMoves, changedVotes, changed);
+        }
+        System.arraycopy(moves, 0, sentMoves, 0, count);
+        System.arraycopy(votes, 0, sentVotes, 0, count);
+        sentCount = count;
+        sentVoters = voters;
+        sentRevision = revision;
+
+        // Not sequenced: a reconnecting player needs the current standing, not a replay of old ones
+        for (ClientConnection client : members.keySet()) {
+            client.sendFrame(frame);
+        }
+        spectators.publish(frame);
+    }
+
+    // The last vote progress sent, as a full list for a client that arrives in the middle of the turn
+    private ByteBuffer progressFrame() {
+        return FrameCodec.voteProgress(tally.getTurn(), sentRevision, sentVoters, true, sentMoves, sentVotes, sentCount);
+    }
+
+    private static int indexOf(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // A running vote is announced to the client; otherwise the client's arrival starts one for everybody
+    private void announceTurn(ClientConnection client) {
+        if (tally != null) {
+            client.sendFrame(turnOpenFrame());
+            if (sentRevision > 0) {
+                client.sendFrame(progressFrame());
+            }
+        } else if (!game.isGameOver()) {
+            openTurn();
+        }
+    }
+
+    private ByteBuffer turnOpenFrame() {
+        long remaining = Math.max(0, tally.getDeadlineMillis() - System.currentTimeMillis());
+        return FrameCodec.turnOpen(tally.getTurn(), tally.getTeam(), remaining);
+    }
+
+    /**
+     * Opens a timed vote on the next move. When the time is up the most voted move is played and
+     * announced, and voting opens for the other team. If nobody voted, the same team gets another round.
+     */
+    private void openTurn() {
+        long turnMillis = server.getTurnMillis();
+        VoteTally opened = new VoteTally(gameID, game);
+        opened.setDeadlineMillis(System.currentTimeMillis() + turnMillis);
+        tally = opened;
+        sentCount = 0;
+        sentVoters = 0;
+        sentRevision = 0;
+        // The wheel thread only hands the expiry back to this room's shard
+        turnTimer = server.getTurnScheduler().schedule(
+                () -> shard.execute(gameID, room -> room.closeTurn(opened)), turnMillis, TimeUnit.MILLISECONDS);
+        broadcast(FrameCodec.turnOpen(opened.getTurn(), opened.getTeam(), turnMillis));
+    }
+
+    private void closeTurn(VoteTally closing) {
+        // The turn was restarted or stopped after this deadline was set
+        if (tally != closing) {
+            return;
+        }
+        tally = null;
+        turnTimer = null;
+        closing.close();
+
+        int move = closing.getWinningMove();
+        if (move == Move.NONE) {
+            broadcastMessage("System", "No votes were cast, " + teamName(closing.getTeam()) + " votes again.");
+            openTurn();
+            return;
+        }
+        game.playMove(move);
+
+        int turn = game.getPosition().getPly();
+        broadcast(FrameCodec.moveCommit(closing.getTurn(), move, closing.getVotesFor(move)));
+        broadcast(FrameCodec.stateDelta(turn, move, game.getZobristKey()));
+        int interval = server.getSnapshotInterval();
+        if (interval > 0 && turn % interval == 0) {
+            broadcast(snapshotFrame());
+        }
+        if (!game.isGameOver()) {
+            openTurn();
+        }
+    }
+
+    private void stopVoting() {
+        if (turnTimer != null) {
+            turnTimer.cancel();
+            turnTimer = null;
+        }
+        if (tally != null) {
+            tally.close();
+            tally = null;
+        }
+    }
+
+    private ByteBuffer snapshotFrame() {
+        return FrameCodec.snapshot(game.getPosition().getPly(), game.toFen());
+    }
+
+    private void broadcastMessage(String sender, String message) {
+        broadcast(FrameCodec.chat(sender, message));
+    }
+
+    // The frame is encoded once and only queued to each client, so a slow client never holds up the sender
+    private void broadcast(ByteBuffer frame) {
+        ByteBuffer sequenced = FrameCodec.sequenced(nextSequence, frame);
+        replay[nextSequence % REPLAY_CAPACITY] = sequenced;
+        nextSequence++;
+        for (ClientConnection client : members.keySet()) {
+            client.sendFrame(sequenced);
+        }
+        spectators.publish(frame);
+    }
+
+    // Nonzero, since 0 asks for a new session
+    private long newToken() {
+        long token;
+        do {
+            token = TOKENS.nextLong();
+        } while (token == 0 || sessions.containsKey(token));
+        return token;
+    }
+
+    private static String teamName(PieceColor team) {
+        return team == PieceColor.WHITE ? "White" : "Black";
+    }
+
+    private static final class Session {
+        final long token;
+        final String userName;
+        final PieceColor team;
+        // The player's current connection, or null while it is away
+        ClientConnection connection;
+        // Counts the times the connection was lost, so a stale expiry can tell it is stale
+        int departures;
+        TurnScheduler.Timeout expiry;
+
+        Session(long token, ClientConnection connection) {
+            this.token = token;
+            this.userName = connection.getUserName();
+            this.team = connection.getTeam();
+            this.connection = connection;
+        }
+    }
+}
@@ -1,31 +1,127 @@
 package com.chess.democracy.edition.networking;
 
+import com.chess.democracy.edition.chess.PieceColor;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 public class GameServer {
-    // Map of gameID to list of client handlers
-    private static Map<Integer, Set<ClientHandler>> gameClients = new ConcurrentHashMap<>();
+    // Time a team has to vote on its move unless changed with setTurnDuration
+    public static final long DEFAULT_TURN_MILLIS = 30_000;
+
+    // Selector threads in ServerMode.SELECTOR; a handful serve any number of clients
+    public static final int DEFAULT_IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Worker threads the game rooms are spread over; each runs every event of its rooms in order
+    public static final int DEFAULT_ROOM_SHARDS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Plies between the full positions broadcast alongside the move deltas
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 10;
+
+    // Vote progress updates clients get per second at most, however fast ballots arrive
+    public static final int DEFAULT_VOTE_PROGRESS_RATE = 4;
+
+    // Threads that copy each room's frames to its spectators
+    public static final int DEFAULT_FANOUT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Time a dropped player has to reconnect before the room announces that they left
+    public static final long DEFAULT_RECONNECT_GRACE_MILLIS = 30_000;
+
+    // Outbound queue bounds per client unless changed with setOutboundLimits
+    public static final int DEFAULT_LOW_WATERMARK = 64 * 1024;
+    public static final int DEFAULT_HIGH_WATERMARK = 256 * 1024;
+    public static final long DEFAULT_SLOW_CONSUMER_MILLIS = 10_000;
+    // A client is evicted at once when its queue reaches this multiple of the high watermark
+    private static final int MAX_QUEUED_FACTOR = 4;
 
     private static GameServer instance = null;
+    private final ServerMode mode;
     private ServerSocket serverSocket;
-    private ExecutorService executor;
+    private SelectorServer selectorServer;
+    // Runs the accept loop and a thread per client; null in SELECTOR mode, where the IO threads serve the sockets
+    private final ExecutorService executor;
     private boolean isRunning = false;
+    // Links to the other nodes in clustered mode, null for a server that holds every game
+    private volatile ClusterBus cluster;
+
+    // Players, authoritative game state and open vote of each game, spread over the shards by gameID
+    private final RoomShard[] shards;
+    // Spectator fan-out, kept off the shards so an audience does not slow down the players
+    private final ExecutorService fanout;
+
+    // Deadlines of the open votes; expiries are handed straight to the room's shard
+    private TurnScheduler turnScheduler;
+    private volatile long turnMillis = DEFAULT_TURN_MILLIS;
+    private volatile int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+    private volatile long reconnectGraceMillis = DEFAULT_RECONNECT_GRACE_MILLIS;
+    private volatile long voteProgressMillis = 1000 / DEFAULT_VOTE_PROGRESS_RATE;
+
+    // Backpressure on clients that read slower than the game sends
+    private volatile int lowWatermark = DEFAULT_LOW_WATERMARK;
+    private volatile int highWatermark = DEFAULT_HIGH_WATERMARK;
+    private volatile long slowConsumerMillis = DEFAULT_SLOW_CONSUMER_MILLIS;
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder coalescedFrames = new LongAdder();
+    private final LongAdder evictedClients = new LongAdder();
 
     // Private constructor to prevent instantiation
-    private GameServer(String ipAddress, int port) throws IOException {
-        serverSocket = new ServerSocket();
-        serverSocket.bind(new InetSocketAddress(ipAddress, port));
-        System.out.println("Game server started on " + ipAddress + ":" + port);
-        executor = Executors.newCachedThreadPool();
-        acceptClients();
+    private GameServer(String ipAddress, int port, ServerMode mode, ClusterRouter router) throws IOException {
+        this.mode = mode;
+        executor = switch (mode) {
+            case VIRTUAL_THREADS -> Executors.newVirtualThreadPerTaskExecutor();
+            case THREAD_PER_CONNECTION -> Executors.newCachedThreadPool();
+            case SELECTOR -> null;
+        };
+        // Every timer of the server only queues its work to a shard, so expiries can run on the wheel thread
+        turnScheduler = new TurnScheduler(Runnable::run);
+        shards = new RoomShard[DEFAULT_ROOM_SHARDS];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new RoomShard(this, i);
+            shards[i].start();
+        }
+        fanout = Executors.newFixedThreadPool(DEFAULT_FANOUT_THREADS, task -> {
+            Thread thread = new Thread(task, "spectator-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ServerSocketChannel serverChannel = null;
+            if (mode == ServerMode.SELECTOR) {
+                serverChannel = ServerSocketChannel.open();
+                serverSocket = serverChannel.socket();
+            } else {
+                serverSocket = new ServerSocket();
+            }
+            serverSocket.bind(new InetSocketAddress(ipAddress, port));
+            // Up before the first client is accepted, since a client's HELLO may need it straight away
+            if (router != null) {
+                cluster = new ClusterBus(this, router);
+            }
+            if (mode == ServerMode.SELECTOR) {
+                selectorServer = new SelectorServer(this, serverChannel, DEFAULT_IO_THREADS);
+                selectorServer.start();
+            } else {
+                acceptClients();
+            }
+        } catch (IOException e) {
+            // A server that failed to start must not keep its ports and threads, or a retry would find them taken
+            release();
+            throw e;
+        }
+        // The bound port, which differs from the requested one when that was 0
+        System.out.println("Game server started on " + ipAddress + ":" + serverSocket.getLocalPort() + " (" + mode + ")");
         isRunning = true;
     }
 
     /**
-     * Returns the single instance of GameServer. If it doesn't exist, creates one.
+     * Returns the single instance of GameServer. If it doesn't exist, creates one
+     * that serves its clients with {@link ServerMode#SELECTOR}.
      *
      * @param ipAddress the IP address to bind the server.
      * @param port      the port number to bind the server.
@@ -33,8 +129,36 @@ public class GameServer {
      * @throws IOException if an I/O error occurs when opening the socket.
      */
     public static synchronized GameServer getInstance(String ipAddress, int port) throws IOException {
+        return getInstance(ipAddress, port, ServerMode.SELECTOR);
+    }
+
+    /**
+     * Returns the single instance of GameServer. If it doesn't exist, creates one.
+     *
+     * @param ipAddress the IP address to bind the server.
+     * @param port      the port number to bind the server.
+     * @param mode      how client sockets are served; ignored if the server is already running.
+     * @return the single instance of GameServer.
+     * @throws IOException if an I/O error occurs when opening the socket.
+     */
+    public static synchronized GameServer getInstance(String ipAddress, int port, ServerMode mode) throws IOException {
+        return getInstance(ipAddress, port, mode, null);
+    }
+
+    /**
+     * Returns the single instance of GameServer. If it doesn't exist, creates one as a node of a
+     * cluster: games owned by other nodes are played there, with this node relaying its players' frames.
+     *
+     * @param ipAddress the IP address to bind the server.
+     * @param port      the port number to bind the server.
+     * @param mode      how client sockets are served; ignored if the server is already running.
+     * @param router    the cluster this node belongs to, or null for a server that holds every game.
+     * @return the single instance of GameServer.
+     * @throws IOException if an I/O error occurs when opening the client or cluster socket.
+     */
+    public static synchronized GameServer getInstance(String ipAddress, int port, ServerMode mode, ClusterRouter router) throws IOException {
         if (instance == null) {
-            instance = new GameServer(ipAddress, port);
+            instance = new GameServer(ipAddress, port, mode, router);
         } else {
             System.out.println("Game server is already running on " + instance.getIPAddress() + ":" + instance.getPort());
         }
@@ -55,7 +179,7 @@ public class GameServer {
             while (!serverSocket.isClosed()) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    executor.execute(new ClientHandler(clientSocket));
+                    executor.execute(new ClientHandler(this, clientSocket));
                 } catch (IOException e) {
                     if (!serverSocket.isClosed()) {
                         System.err.println("Error accepting client connection: " + e.getMessage());
@@ -65,25 +189,262 @@ public class GameServer {
         });
     }
 
+    private RoomShard shardFor(int gameID) {
+        return shards[Math.floorMod(gameID, shards.length)];
+    }
+
+    // Runs a task on the shard of a game, behind the events already queued for its room
+    void executeOnShard(int gameID, Runnable task) {
+        shardFor(gameID).execute(task);
+    }
+
+    /**
+     * Sets the time each team has to vote, starting with the next turn.
+     */
+    public void setTurnDuration(long duration, TimeUnit unit) {
+        turnMillis = unit.toMillis(duration);
+    }
+
+    long getTurnMillis() {
+        return turnMillis;
+    }
+
+    TurnScheduler getTurnScheduler() {
+        return turnScheduler;
+    }
+
+    /**
+     * Sets how often the full position follows the move deltas, so clients that missed or
+     * misapplied a delta resynchronize without asking.
+     *
+     * @param plies the number of moves between snapshots, or 0 to only send them on join and request.
+     */
+    public void setSnapshotInterval(int plies) {
+        snapshotInterval = plies;
+    }
+
+    int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Sets how long a player's session outlives its connection. A player who reconnects within
+     * this time gets only the broadcasts it missed, or a snapshot if the room no longer has them.
+     */
+    public void setReconnectGrace(long grace, TimeUnit unit) {
+        reconnectGraceMillis = unit.toMillis(grace);
+    }
+
+    long getReconnectGraceMillis() {
+        return reconnectGraceMillis;
+    }
+
+    /**
+     * Sets how many vote progress updates players and spectators get per second at most. Ballots
+     * arriving in between are folded into the next update.
+     */
+    public void setVoteProgressRate(int updatesPerSecond) {
+        if (updatesPerSecond <= 0) {
+            throw new IllegalArgumentException("Update rate must be positive");
+        }
+        voteProgressMillis = Math.max(1, 1000 / updatesPerSecond);
+    }
+
+    long getVoteProgressMillis() {
+        return voteProgressMillis;
+    }
+
+    Executor getFanoutExecutor() {
+        return fanout;
+    }
+
+    /**
+     * Sets how much may be queued for a client that reads slower than the game sends. Once a
+     * client's queue reaches the high watermark, chat is dropped and superseded frames are
+     * coalesced for it until the queue is back under the low watermark. A client that stays
+     * over the high watermark longer than the timeout, or whose queue reaches four times the
+     * high watermark, is disconnected.
+     *
+     * @param lowWatermark  queued bytes at which a congested client counts as caught up.
+     * @param highWatermark queued bytes at which a client counts as congested.
+     * @param slowConsumerTimeout how long a client may stay congested.
+     */
+    public void setOutboundLimits(int lowWatermark, int highWatermark, long slowConsumerTimeout, TimeUnit unit) {
+        if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 <= low < high");
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.slowConsumerMillis = unit.toMillis(slowConsumerTimeout);
+    }
+
+    int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    int getHighWatermark() {
+        return highWatermark;
+    }
+
+    long getMaxQueuedBytes() {
+        return (long) highWatermark * MAX_QUEUED_FACTOR;
+    }
+
+    long getSlowConsumerMillis() {
+        return slowConsumerMillis;
+    }
+
+    // Frames left out for congested clients since the server started
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    // Frames replaced by a newer frame of the same type before a congested client got them
+    public long getCoalescedFrames() {
+        return coalescedFrames.sum();
+    }
+
+    // Clients disconnected because they could not keep up
+    public long getEvictedClients() {
+        return evictedClients.sum();
+    }
+
+    void recordDropped() {
+        droppedFrames.increment();
+    }
+
+    void recordCoalesced() {
+        coalescedFrames.increment();
+    }
+
+    void recordEvicted() {
+        evictedClients.increment();
+    }
+
+    /**
+     * Handles the HELLO frame that opens a connection and adds the client to its game.
+     *
+     * @param team the team the player votes for, or null for a player who only watches and chats.
+     * @param sessionToken the session to resume, or 0 for a new one.
+     * @param lastSequence the last broadcast the player received in that session.
+     * @return false if the client should be dropped.
+     */
+    boolean handleHello(ClientConnection client, int gameID, PieceColor team, String userName, long sessionToken, int lastSequence) {
+        if (!isValidUserName(userName)) {
+            return false;
+        }
+        client.join(gameID, userName, team);
+        if (isRemote(gameID)) {
+            return cluster.open(client, FrameCodec.hello(gameID, team, userName, sessionToken, lastSequence));
+        }
+        shardFor(gameID).execute(gameID, room -> room.join(client, sessionToken, lastSequence));
+        return true;
+    }
+
+    /**
+     * Handles the SPECTATE frame that opens a spectator's connection and adds it to the audience of its game.
+     *
+     * @return false if the client should be dropped.
+     */
+    boolean handleSpectate(ClientConnection client, int gameID, String userName) {
+        if (!isValidUserName(userName)) {
+            return false;
+        }
+        client.spectate(gameID, userName);
+        if (isRemote(gameID)) {
+            return cluster.open(client, FrameCodec.spectate(gameID, userName));
+        }
+        shardFor(gameID).execute(gameID, room -> room.watch(client));
+        return true;
+    }
+
+    void handleSnapshotRequest(ClientConnection client) {
+        if (isRemote(client.getGameID())) {
+            cluster.forward(client, FrameCodec.snapshotRequest());
+            return;
+        }
+        shardFor(client.getGameID()).execute(client.getGameID(), room -> room.sendSnapshot(client));
+    }
+
+    // Names go into every chat frame and join announcement, so they are kept short
+    private static boolean isValidUserName(String userName) {
+        return !userName.isEmpty() && FrameCodec.utf8Length(userName) <= FrameCodec.MAX_USER_NAME_BYTES;
+    }
+
+    // Long lines are cut rather than refused; re-encoded with the sender and sequenced they still fit in a frame
+    void handleChat(ClientConnection client, String message) {
+        String text = FrameCodec.truncate(message, FrameCodec.MAX_CHAT_BYTES);
+        if (isRemote(client.getGameID())) {
+            cluster.forward(client, FrameCodec.chat("", text));
+            return;
+        }
+        shardFor(client.getGameID()).execute(client.getGameID(), room -> room.chat(client, text));
+    }
+
+    void handleVote(ClientConnection client, int turn, int move) {
+        if (isRemote(client.getGameID())) {
+            cluster.forward(client, FrameCodec.vote(turn, move, null));
+            return;
+        }
+        shardFor(client.getGameID()).execute(client.getGameID(), room -> room.vote(client, turn, move));
+    }
+
+    // Called once when a connection ends, whether or not it completed the handshake
+    void handleDisconnect(ClientConnection client) {
+        if (!client.hasJoined()) {
+            return;
+        }
+        if (isRemote(client.getGameID())) {
+            cluster.detach(client);
+            return;
+        }
+        shardFor(client.getGameID()).execute(client.getGameID(), room -> room.leave(client));
+    }
+
+    // In clustered mode, games owned by another node are only relayed by this one
+    private boolean isRemote(int gameID) {
+        return cluster != null && !cluster.isLocal(gameID);
+    }
+
     /**
      * Stops the server gracefully.
      */
     public synchronized void stopServer() {
         if (isRunning) {
-            try {
-                serverSocket.close();
-                executor.shutdownNow();
-                System.out.println("Game server stopped.");
-                instance = null; // Allow future restarts
-                isRunning = false;
-            } catch (IOException e) {
-                System.err.println("Error stopping server: " + e.getMessage());
-            }
+            release();
+            System.out.println("Game server stopped.");
+            instance = null; // Allow future restarts
+            isRunning = false;
         } else {
             System.out.println("Game server is not running.");
         }
     }
 
+    // Closes and stops whatever the server has opened and started, including after a constructor that failed part way
+    private void release() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error stopping server: " + e.getMessage());
+        }
+        if (selectorServer != null) {
+            selectorServer.stop();
+        }
+        if (cluster != null) {
+            cluster.stop();
+        }
+        turnScheduler.stop();
+        for (RoomShard shard : shards) {
+            shard.stop();
+        }
+        fanout.shutdownNow();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Retrieves the IP address the server is bound to.
      *
@@ -102,15 +463,20 @@ public class GameServer {
         return serverSocket.getLocalPort();
     }
 
-    // Inner class to handle client connections
-    private static class ClientHandler implements Runnable {
+    public ServerMode getMode() {
+        return mode;
+    }
+
+    // Inner class to handle client connections in the blocking modes, on a pooled or a virtual thread
+    private static class ClientHandler extends ClientConnection implements Runnable {
         private Socket socket;
-        private int gameID;
-        private String userName;
-        private BufferedReader in;
-        private PrintWriter out;
+        private FrameReader in;
+        private volatile OutputStream out;
+        // Set while a writer task for the outbound queue is queued or running on the server's executor
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
 
-        public ClientHandler(Socket socket) {
+        public ClientHandler(GameServer server, Socket socket) {
+            super(server);
             this.socket = socket;
         }
 
@@ -118,62 +484,72 @@ public class GameServer {
         public void run() {
             try {
                 // Setup I/O streams
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
-
-                // First, read gameID and userName from the client
-                String initInfo = in.readLine();
-                String[] parts = initInfo.split(":", 2);
-                if (parts.length < 2) {
-                    socket.close();
-                    return;
+                in = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+                out = new BufferedOutputStream(socket.getOutputStream());
+                // Frames may have been queued before the stream existed
+                if (!outbound.isEmpty()) {
+                    requestFlush();
                 }
-                gameID = Integer.parseInt(parts[0]);
-                userName = parts[1];
 
-                // Add this client to the gameClients map
-                gameClients.computeIfAbsent(gameID, k -> ConcurrentHashMap.newKeySet()).add(this);
-
-                // Notify others that a new user has joined
-                broadcastMessage("System", userName + " has joined the chat.");
-
-                // Read messages from the client and broadcast them
-                String message;
-                while ((message = in.readLine()) != null) {
-                    broadcastMessage(userName, message);
+                // Read frames from the client until it disconnects; the first must be HELLO
+                while (!socket.isClosed() && in.readFrame(this)) {
+                    // Frames are handled by the FrameHandler methods
                 }
             } catch (IOException e) {
-                System.err.println("Connection error with client: " + e.getMessage());
-            } finally {
-                // Remove client from the gameClients map
-                Set<ClientHandler> clients = gameClients.get(gameID);
-                if (clients != null) {
-                    clients.remove(this);
-                    if (clients.isEmpty()) {
-                        gameClients.remove(gameID);
-                    }
+                // Stopping the server interrupts every handler
+                if (!server.serverSocket.isClosed() && !socket.isClosed()) {
+                    System.err.println("Connection error with client: " + e.getMessage());
                 }
-                broadcastMessage("System", userName + " has left the chat.");
+            } finally {
+                server.handleDisconnect(this);
+                close();
+            }
+        }
+
+        @Override
+        void requestFlush() {
+            if (out != null && flushScheduled.compareAndSet(false, true)) {
                 try {
-                    socket.close();
-                } catch (IOException e) {
-                    // Ignore
+                    server.executor.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    // Server is stopping
                 }
             }
         }
 
-        private void broadcastMessage(String sender, String message) {
-            String fullMessage = sender + ": " + message;
-            Set<ClientHandler> clients = gameClients.get(gameID);
-            if (clients != null) {
-                for (ClientHandler client : clients) {
-                    client.sendMessage(fullMessage);
+        // Writes everything queued so far with a single flush; only one flush runs at a time
+        private void flush() {
+            try {
+                ByteBuffer frame;
+                while ((frame = outbound.peek()) != null) {
+                    out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                    outbound.remove();
                 }
+                out.flush();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            flushScheduled.set(false);
+            // A frame queued after the last peek found the flag still set and did not schedule a flush
+            if (!outbound.isEmpty()) {
+                requestFlush();
             }
         }
 
-        private void sendMessage(String message) {
-            out.println(message);
+        @Override
+        boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        @Override
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            outbound.clear();
         }
     }
 }
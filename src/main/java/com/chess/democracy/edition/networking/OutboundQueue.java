@@ -0,0 +1,148 @@
+package com.chess.democracy.edition.networking;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frames waiting to be written to one client, bounded by the byte watermarks of its
+ * {@link GameServer}. Once the queued bytes reach the high watermark the client counts as
+ * congested until its writer brings them back under the low watermark. While congested, frames
+ * are admitted by their {@link FrameType.Congestion}, and a client that stays congested past the
+ * server's slow consumer timeout, or whose backlog reaches the hard limit, is to be evicted.
+ *
+ * <p>Frames are written in the order they were offered. Coalescing takes the replaced frame out of
+ * the queue and queues the new one at the end, so a client may miss a frame but never receives an
+ * older one after a newer one.
+ *
+ * <p>Any thread may offer frames; only the connection's writer peeks and polls.
+ */
+final class OutboundQueue {
+
+    enum Admission {
+        QUEUED,
+        // Queued, and the client has just become congested
+        CONGESTED,
+        COALESCED,
+        DROPPED,
+        // The client cannot keep up and must be disconnected
+        EVICT
+    }
+
+    private final GameServer server;
+    private final Queue<Slot> frames = new ConcurrentLinkedQueue<>();
+    // The last queued frame of each coalescing type, which a newer one replaces unless it is being written
+    private final ConcurrentHashMap<FrameType, Slot> latest = new ConcurrentHashMap<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    // When the high watermark was crossed, or 0 while the client keeps up
+    private volatile long congestedSince;
+
+    OutboundQueue(GameServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Queues a frame, or leaves it out if the client is congested and the frame type allows that.
+     * The frame may be shared with other clients; a duplicate is queued.
+     */
+    Admission offer(ByteBuffer frame) {
+        FrameType type = FrameCodec.typeOf(frame);
+        int size = frame.remaining();
+        long since = congestedSince;
+        if (since != 0) {
+            if (System.currentTimeMillis() - since > server.getSlowConsumerMillis()) {
+                return Admission.EVICT;
+            }
+            if (type.getCongestion() == FrameType.Congestion.DROP) {
+                return Admission.DROPPED;
+            }
+        }
+
+        Slot slot = new Slot(frame.duplicate());
+        boolean coalesced = false;
+        if (type.getCongestion() == FrameType.Congestion.COALESCE) {
+            Slot replaced = latest.put(type, slot);
+            if (since != 0 && replaced != null && replaced.state.compareAndSet(Slot.QUEUED, Slot.REPLACED)) {
+                coalesced = true;
+                queuedBytes.addAndGet(-replaced.frame.limit());
+            }
+        }
+        frames.add(slot);
+        long bytes = queuedBytes.addAndGet(size);
+        if (bytes > server.getMaxQueuedBytes()) {
+            return Admission.EVICT;
+        }
+        if (coalesced) {
+            return Admission.COALESCED;
+        }
+        if (since == 0 && bytes >= server.getHighWatermark()) {
+            congestedSince = System.currentTimeMillis();
+            return Admission.CONGESTED;
+        }
+        return Admission.QUEUED;
+    }
+
+    // The next frame to write; it stays at the head, and cannot be replaced, until remove is called
+    ByteBuffer peek() {
+        Slot slot;
+        while ((slot = frames.peek()) != null) {
+            if (slot.state.get() == Slot.WRITING || slot.state.compareAndSet(Slot.QUEUED, Slot.WRITING)) {
+                return slot.frame;
+            }
+            // Replaced by a newer frame further back; its bytes were already taken off
+            frames.poll();
+        }
+        return null;
+    }
+
+    // Removes the frame returned by peek once it has been written in full
+    void remove() {
+        Slot slot = frames.poll();
+        // Encoded frames start at position 0, so the limit is the frame size even after writing moved the position
+        if (slot != null && queuedBytes.addAndGet(-slot.frame.limit()) <= server.getLowWatermark()) {
+            congestedSince = 0;
+        }
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    boolean isCongested() {
+        return congestedSince != 0;
+    }
+
+    // Time left until a congested client is evicted, negative once it is overdue, or Long.MAX_VALUE if it keeps up
+    long getMillisUntilEviction() {
+        long since = congestedSince;
+        return since == 0 ? Long.MAX_VALUE : since + server.getSlowConsumerMillis() - System.currentTimeMillis();
+    }
+
+    void clear() {
+        frames.clear();
+        latest.clear();
+        queuedBytes.set(0);
+        congestedSince = 0;
+    }
+
+    private static final class Slot {
+        static final int QUEUED = 0;
+        static final int WRITING = 1;
+        static final int REPLACED = 2;
+
+        final ByteBuffer frame;
+        // Only moves on from QUEUED, so the writer and a coalescing offer never both take the frame
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        Slot(ByteBuffer frame) {
+            this.frame = frame;
+        }
+    }
+}
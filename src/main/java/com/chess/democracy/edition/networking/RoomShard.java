@@ -0,0 +1,76 @@
+package com.chess.democracy.edition.networking;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * A worker thread that owns a share of the {@link GameRoom}s of a {@link GameServer}. Events for a
+ * room are queued to its shard and run there one at a time in arrival order, so room state is
+ * only ever touched by one thread and needs no locks. The server picks the shard from the game
+ * ID, so a game stays on the same shard for its whole life.
+ */
+final class RoomShard implements Runnable {
+    private final GameServer server;
+    private final Thread thread;
+    private final BlockingQueue<Runnable> events = new LinkedBlockingQueue<>();
+    // Only touched by the shard thread
+    private final Map<Integer, GameRoom> rooms = new HashMap<>();
+    private volatile boolean running = true;
+
+    RoomShard(GameServer server, int index) {
+        this.server = server;
+        thread = new Thread(this, "game-room-shard-" + index);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Queues an event for a game's room, creating the room on first use; called from any thread.
+     * A room that nobody is in or can come back to after the event is dropped, so the rooms of
+     * finished and unused games do not pile up.
+     */
+    void execute(int gameID, Consumer<GameRoom> event) {
+        events.add(() -> {
+            GameRoom room = rooms.computeIfAbsent(gameID, id -> new GameRoom(server, this, id));
+            event.accept(room);
+            if (room.isIdle()) {
+                rooms.remove(gameID);
+                room.close();
+            }
+        });
+    }
+
+    // Queues work that is not for one room, such as dropping a slow client; called from any thread
+    void execute(Runnable task) {
+        events.add(task);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Runnable event;
+            try {
+                event = events.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                // One bad event must not take the other rooms of the shard down with it
+                System.err.println("Error in game room: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.chess.democracy.edition.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.net.ProtocolException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the clients of a {@link GameServer} with a fixed number of selector threads instead of
+ * one thread per socket. Every connection lives on one I/O loop for its whole life; its frames are
+ * decoded and handed to the server on that loop, and messages sent to it from any thread are queued
+ * and written by that loop when the socket can take them.
+ */
+final class SelectorServer {
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final GameServer server;
+    private final ServerSocketChannel serverChannel;
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    SelectorServer(GameServer server, ServerSocketChannel serverChannel, int ioThreads) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop(i);
+        }
+    }
+
+    void start() throws IOException {
+        serverChannel.configureBlocking(false);
+        // The first loop also accepts and deals the new connections out round-robin
+        loops[0].execute(() -> {
+            try {
+                serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+            } catch (ClosedChannelException e) {
+                // Server stopped before the loop started
+            }
+        });
+        for (IoLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    void stop() {
+        for (IoLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                SocketChannel accepted = channel;
+                loop.execute(() -> loop.register(accepted));
+            }
+        } catch (IOException e) {
+            if (serverChannel.isOpen()) {
+                System.err.println("Error accepting client connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        // Work handed in from other threads, run on this loop between selects
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "game-server-io-" + index);
+            thread.setDaemon(true);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            if (thread.getState() == Thread.State.NEW) {
+                // The server failed to start; no loop will run to close the selector
+                closeQuietly(selector);
+            } else {
+                selector.wakeup();
+            }
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(server, this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                System.err.println("Connection error with client: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    runTasks();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        try {
+                            handle(key);
+                        } catch (RuntimeException e) {
+                            // Only the connection at fault is dropped; the loop serves the others
+                            System.err.println("Error serving client: " + e);
+                            if (key.attachment() instanceof Connection) {
+                                ((Connection) key.attachment()).close();
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Selector failure: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // One bad task must not take the other connections of the loop down with it
+                    System.err.println("Error in IO loop task: " + e);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        }
+    }
+
+    private final class Connection extends ClientConnection {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        // Only touched by the loop thread; grows to fit the largest frame the client sends
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        // Set while a flush is queued on the loop or waiting for the socket to become writable
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Connection(GameServer server, IoLoop loop, SocketChannel channel) {
+            super(server);
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        @Override
+        void requestFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(this::flush);
+            }
+        }
+
+        @Override
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        @Override
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            outbound.clear();
+            server.handleDisconnect(this);
+        }
+
+        private void read() {
+            int count;
+            try {
+                count = channel.read(readBuffer);
+            } catch (IOException e) {
+                System.err.println("Connection error with client: " + e.getMessage());
+                close();
+                return;
+            }
+            if (count < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            int needed;
+            try {
+                needed = FrameCodec.decode(readBuffer, this);
+            } catch (ProtocolException e) {
+                System.err.println("Protocol error from client: " + e.getMessage());
+                close();
+                return;
+            }
+            readBuffer.compact();
+            if (needed > readBuffer.capacity()) {
+                readBuffer = ByteBuffer.allocate(needed).put(readBuffer.flip());
+            }
+        }
+
+        private void flush() {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                ByteBuffer buffer;
+                while ((buffer = outbound.peek()) != null) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        // Socket buffer is full; continue when the selector says it has room
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.remove();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                flushScheduled.set(false);
+                // A message queued after the last peek found the flag still set and did not schedule a flush
+                if (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+                    loop.execute(this::flush);
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            } catch (RuntimeException e) {
+                System.err.println("Error writing to client: " + e);
+                close();
+            }
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.chess.democracy.edition.networking;
+
+/**
+ * How {@link GameServer} serves its client sockets.
+ */
+public enum ServerMode {
+    // One pooled thread per client, blocking on its socket
+    THREAD_PER_CONNECTION,
+    // One virtual thread per client, blocking on its socket without holding a platform thread
+    VIRTUAL_THREADS,
+    // A few selector threads multiplexing every client over non-blocking channels
+    SELECTOR
+}
@@ -0,0 +1,94 @@
+package com.chess.democracy.edition.networking;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The spectators of one {@link GameRoom}. The room only queues its frames here; copying them to
+ * every spectator happens on the server's fan-out threads, so the size of the audience never
+ * adds to the time the room's shard spends on a ballot or a move.
+ *
+ * <p>Frames and audience changes are queued in order and one drain runs at a time, so spectators
+ * see the room's frames in the order they were published, starting after the snapshot they
+ * joined with. Only the room's shard calls the methods below.
+ */
+final class SpectatorGroup {
+    // Bounds a single drain so one busy room cannot hold a fan-out thread from the others
+    private static final int MAX_EVENTS_PER_DRAIN = 64;
+
+    private final Executor executor;
+    private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Only touched by drains, which never overlap
+    private final Set<ClientConnection> spectators = new LinkedHashSet<>();
+    // Spectators added and not yet removed, counted as the shard asks so a game nobody watches publishes nothing
+    private int audience;
+
+    SpectatorGroup(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Adds a spectator, who receives the given frames before anything published after this call
+    void add(ClientConnection client, ByteBuffer... greeting) {
+        audience++;
+        post(() -> {
+            spectators.add(client);
+            for (ByteBuffer frame : greeting) {
+                client.sendFrame(frame);
+            }
+        });
+    }
+
+    void remove(ClientConnection client) {
+        audience--;
+        post(() -> spectators.remove(client));
+    }
+
+    // Sends a frame to one spectator, in order with the published frames
+    void send(ClientConnection client, ByteBuffer frame) {
+        post(() -> client.sendFrame(frame));
+    }
+
+    boolean isEmpty() {
+        return audience == 0;
+    }
+
+    // The frame is shared by every spectator, as with the players' broadcasts
+    void publish(ByteBuffer frame) {
+        if (audience == 0) {
+            return;
+        }
+        post(() -> {
+            for (ClientConnection client : spectators) {
+                client.sendFrame(frame);
+            }
+        });
+    }
+
+    private void post(Runnable event) {
+        events.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_EVENTS_PER_DRAIN; i++) {
+            Runnable event = events.poll();
+            if (event == null) {
+                break;
+            }
+            event.run();
+        }
+        scheduled.set(false);
+        // Events posted after the last poll would otherwise wait for the next one
+        if (!events.isEmpty() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.chess.democracy.edition.networking;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for the vote deadlines of many concurrent games. A single thread advances
+ * the wheel one bucket per tick and only looks at the timeouts hashed into that bucket, so the
+ * cost of a tick does not depend on how many games are waiting. Deadlines are rounded up to the
+ * tick, which is plenty for turns measured in seconds.
+ *
+ * <p>Expired tasks run on the given executor. With a direct executor such as {@code Runnable::run}
+ * they run on the wheel thread itself and must only hand their work on, as the game server's
+ * timers do by queueing it to a {@link RoomShard}; anything slower, such as a broadcast, would
+ * delay the deadlines of every other game.
+ */
+public class TurnScheduler {
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+
+    // Timeouts scheduled from other threads, moved into the wheel by the wheel thread on each tick
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+
+    // Only touched by the wheel thread
+    private long currentTick;
+
+    public TurnScheduler(Executor taskExecutor) {
+        this(taskExecutor, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates and starts a timer wheel.
+     *
+     * @param taskExecutor the executor expired tasks run on.
+     * @param tickDuration the resolution of the deadlines.
+     * @param unit         the unit of tickDuration.
+     * @param wheelSize    the number of buckets, rounded up to a power of two; deadlines further
+     *                     away than one revolution wait in their bucket for extra rounds.
+     */
+    public TurnScheduler(Executor taskExecutor, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive.");
+        }
+        this.taskExecutor = taskExecutor;
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Timeout[Math.max(size, 1)];
+        this.mask = wheel.length - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, "turn-scheduler");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @return a handle to cancel the task with.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel thread. Tasks that have not expired yet never run.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickTime = (currentTick + 1) * tickNanos;
+            long sleep = nextTickTime - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            transferPending();
+            expireBucket((int) (currentTick & mask));
+            currentTick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // Round up so a task never runs early, but never into a tick the wheel has passed
+            long ticks = Math.max((timeout.deadline + tickNanos - 1) / tickNanos, currentTick);
+            timeout.remainingRounds = (ticks - currentTick) / wheel.length;
+            int bucket = (int) (ticks & mask);
+            timeout.next = wheel[bucket];
+            wheel[bucket] = timeout;
+        }
+    }
+
+    private void expireBucket(int bucket) {
+        Timeout previous = null;
+        Timeout timeout = wheel[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled() || timeout.remainingRounds == 0) {
+                // Unlink the timeout from the bucket
+                if (previous == null) {
+                    wheel[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                timeout.expire();
+            } else {
+                timeout.remainingRounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public final class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        // Bucket bookkeeping, only touched by the wheel thread
+        private long remainingRounds;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running.
+         *
+         * @return false if the task has already been handed to the executor.
+         */
+        public boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(WAITING, EXPIRED)) {
+                return;
+            }
+            try {
+                taskExecutor.execute(task);
+            } catch (RuntimeException e) {
+                System.err.println("Error running scheduled turn task: " + e.getMessage());
+            }
+        }
+    }
+}
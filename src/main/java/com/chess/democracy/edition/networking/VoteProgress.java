@@ -0,0 +1,77 @@
+package com.chess.democracy.edition.networking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client side copy of the most voted moves of the open turn, kept up to date from VOTE_PROGRESS
+ * frames. A full frame replaces the list; any other frame only applies on top of the revision
+ * before it, so after a lost frame the list stays as it was until the next full one.
+ */
+public class VoteProgress {
+    private final Map<Integer, Integer> votes = new HashMap<>();
+    private int turn = -1;
+    // 0 while waiting for a full list
+    private int revision;
+    private int voters;
+
+    /**
+     * Applies a VOTE_PROGRESS frame, as passed to {@link FrameHandler#onVoteProgress}.
+     *
+     * @return true if the list changed, false if the frame was stale or could not be applied yet.
+     */
+    public boolean apply(int turn, int revision, int voters, boolean full, int[] moves, int[] votes) {
+        if (full) {
+            if (turn == this.turn && revision <= this.revision) {
+                return false;
+            }
+            this.votes.clear();
+        } else if (turn != this.turn || this.revision == 0 || revision != this.revision + 1) {
+            return false;
+        }
+        for (int i = 0; i < moves.length; i++) {
+            if (votes[i] > 0) {
+                this.votes.put(moves[i], votes[i]);
+            } else {
+                this.votes.remove(moves[i]);
+            }
+        }
+        this.turn = turn;
+        this.revision = revision;
+        this.voters = voters;
+        return true;
+    }
+
+    // Forgets the list when a new turn opens
+    public void reset(int turn) {
+        this.turn = turn;
+        revision = 0;
+        voters = 0;
+        votes.clear();
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public int getVoters() {
+        return voters;
+    }
+
+    /**
+     * Returns the listed move keys, most voted first, with ties in move key order as the server
+     * breaks them.
+     */
+    public List<Integer> getMoves() {
+        List<Integer> moves = new ArrayList<>(votes.keySet());
+        moves.sort(Comparator.comparing((Integer move) -> votes.get(move)).reversed().thenComparing(move -> move));
+        return moves;
+    }
+
+    public int getVotes(int move) {
+        return votes.getOrDefault(move, 0);
+    }
+}
@@ -0,0 +1,23 @@
+package com.chess.democracy.edition.networking;
+
+/**
+ * Outcome of casting a ballot with {@link VoteTally#castVote}.
+ */
+public enum VoteStatus {
+    ACCEPTED("Vote accepted."),
+    // The voter had already voted this turn and now backs a different move
+    CHANGED("Vote changed."),
+    ILLEGAL_MOVE("That move is not legal in this position."),
+    VOTING_CLOSED("Voting is closed for this turn."),
+    WRONG_TEAM("It's not your team's turn!");
+
+    private final String message;
+
+    VoteStatus(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
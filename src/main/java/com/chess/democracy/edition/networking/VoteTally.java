@@ -0,0 +1,204 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.ChessGameLogic;
+import com.chess.democracy.edition.chess.Move;
+import com.chess.democracy.edition.chess.MoveList;
+import com.chess.democracy.edition.chess.PieceColor;
+import com.chess.democracy.edition.chess.PieceType;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Ballot box for one team's move in one turn of a game. The candidates are the legal moves of the
+ * position when the turn opened, so a ballot is validated with a binary search instead of a call
+ * into {@link ChessGameLogic}, and counted with an atomic increment. Voters never share a lock.
+ */
+public class VoteTally {
+    private final int gameID;
+    private final int turn;
+    private final PieceColor team;
+
+    // Move keys in ascending order, with the full encoded moves and their vote counts at the same index
+    private final int[] candidateKeys;
+    private final int[] candidateMoves;
+    private final AtomicIntegerArray counts;
+
+    // Candidate index each voter currently backs
+    private final Map<String, Integer> ballots = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+    private volatile long deadlineMillis;
+
+    VoteTally(int gameID, ChessGameLogic game) {
+        this.gameID = gameID;
+        this.turn = game.getPosition().getPly();
+        this.team = game.getPosition().getSideToMove();
+
+        MoveList moves = new MoveList();
+        game.generateLegalMoves(moves);
+        long[] sorted = new long[moves.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            int move = moves.get(i);
+            sorted[i] = ((long) Move.key(move) << 32) | (move & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted);
+
+        candidateKeys = new int[sorted.length];
+        candidateMoves = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            candidateKeys[i] = (int) (sorted[i] >>> 32);
+            candidateMoves[i] = (int) sorted[i];
+        }
+        counts = new AtomicIntegerArray(sorted.length);
+    }
+
+    /**
+     * Records a ballot. A voter has one ballot per turn; voting again moves it to the new move.
+     *
+     * @param voter     the name of the voting player.
+     * @param from      the starting square of the move.
+     * @param to        the destination square of the move.
+     * @param promotion the promotion piece for a pawn reaching the last rank, otherwise null.
+     * @return the outcome of the ballot.
+     */
+    public VoteStatus castVote(String voter, int from, int to, PieceType promotion) {
+        if (!open) {
+            return VoteStatus.VOTING_CLOSED;
+        }
+        if (from < 0 || from >= 64 || to < 0 || to >= 64) {
+            return VoteStatus.ILLEGAL_MOVE;
+        }
+        int key = promotion == null ? Move.of(from, to, 0) : Move.of(from, to, 0, promotion);
+        int index = indexOf(key);
+        if (index < 0) {
+            return VoteStatus.ILLEGAL_MOVE;
+        }
+
+        // The swap is atomic, so racing ballots of one voter still move exactly one vote each
+        Integer previous = ballots.put(voter, index);
+        if (previous != null) {
+            if (previous == index) {
+                return VoteStatus.ACCEPTED;
+            }
+            counts.decrementAndGet(previous);
+        }
+        counts.incrementAndGet(index);
+        return previous == null ? VoteStatus.ACCEPTED : VoteStatus.CHANGED;
+    }
+
+    /**
+     * Stops accepting ballots. A ballot racing with the close may still be counted,
+     * but it can no longer change the committed move once the winner has been read.
+     */
+    public void close() {
+        open = false;
+    }
+
+    /**
+     * Returns the move with the most votes. Ties go to the lowest move key, so every
+     * server reading the same counts picks the same move.
+     *
+     * @return the {@link Move}-encoded winning move, or {@link Move#NONE} if nobody voted.
+     */
+    public int getWinningMove() {
+        int winner = -1;
+        int best = 0;
+        for (int i = 0; i < candidateMoves.length; i++) {
+            int count = counts.get(i);
+            if (count > best) {
+                best = count;
+                winner = i;
+            }
+        }
+        return winner < 0 ? Move.NONE : candidateMoves[winner];
+    }
+
+    /**
+     * Returns the votes a move has received so far.
+     *
+     * @param move a {@link Move}-encoded move; only its {@link Move#key(int)} is compared.
+     * @return the number of votes, 0 if the move is not a candidate.
+     */
+    public int getVotesFor(int move) {
+        int index = indexOf(Move.key(move));
+        return index < 0 ? 0 : counts.get(index);
+    }
+
+    /**
+     * Lists the moves with the most votes, most voted first. Ties go to the lowest move key, as
+     * with {@link #getWinningMove()}. Moves nobody voted for are left out.
+     *
+     * @param moves receives the {@link Move}-encoded moves; its length is the most that are listed.
+     * @param votes receives the vote count of each listed move.
+     * @return the number of moves listed.
+     */
+    public int getTopMoves(int[] moves, int[] votes) {
+        int listed = 0;
+        for (int i = 0; i < candidateMoves.length && moves.length > 0; i++) {
+            int count = counts.get(i);
+            if (count == 0 || (listed == moves.length && count <= votes[listed - 1])) {
+                continue;
+            }
+            // Insertion into a list of a handful of moves; candidates come in key order, so ties stay put
+            int at = Math.min(listed, moves.length - 1);
+            while (at > 0 && votes[at - 1] < count) {
+                if (at < moves.length) {
+                    moves[at] = moves[at - 1];
+                    votes[at] = votes[at - 1];
+                }
+                at--;
+            }
+            moves[at] = candidateMoves[i];
+            votes[at] = count;
+            listed = Math.min(listed + 1, moves.length);
+        }
+        return listed;
+    }
+
+    private int indexOf(int key) {
+        return Arrays.binarySearch(candidateKeys, key);
+    }
+
+    public int getGameID() {
+        return gameID;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public PieceColor getTeam() {
+        return team;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    // Wall-clock time the turn closes, set by whoever schedules the deadline
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    void setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public int getCandidateCount() {
+        return candidateMoves.length;
+    }
+
+    public int getCandidate(int index) {
+        return candidateMoves[index];
+    }
+
+    public int getVotes(int index) {
+        return counts.get(index);
+    }
+
+    public int getVoterCount() {
+        return ballots.size();
+    }
+}
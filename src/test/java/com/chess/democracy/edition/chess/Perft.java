@@ -0,0 +1,110 @@
+package com.chess.democracy.edition.chess;
+
+/**
+ * Perft (performance test) harness for the move engine: counts the leaf nodes of the legal move
+ * tree and compares them against published reference counts. A wrong count pins down bugs in
+ * castling, en passant or promotion handling; the timing gives a nodes/second throughput figure.
+ * {@link PerftTest} checks the same counts as part of {@code gradle test}.
+ *
+ * <p>Run with {@code gradle perft}, optionally {@code -PperftDepth=N} to change the search depth.
+ */
+public class Perft {
+
+    static final int DEFAULT_DEPTH = 4;
+
+    // Reference positions with their node counts for depth 1, 2, 3, ...
+    static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+    };
+
+    static final long[][] EXPECTED_NODES = {
+            {20, 400, 8902, 197281, 4865609, 119060324},
+            {48, 2039, 97862, 4085603, 193690690},
+            {14, 191, 2812, 43238, 674624, 11030083, 178633661},
+            {6, 264, 9467, 422333, 15833292},
+            {44, 1486, 62379, 2103487, 89941194},
+            {46, 2079, 89890, 3894594, 164075551}
+    };
+
+    private final ChessGameLogic game;
+    private final MoveList[] moveLists;
+
+    public Perft(ChessGameLogic game, int maxDepth) {
+        this.game = game;
+        this.moveLists = new MoveList[checkDepth(maxDepth) + 1];
+        for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * Counts the leaf nodes of the legal move tree below the game's current position.
+     *
+     * @param depth the number of plies to search; at most the maxDepth given to the constructor.
+     * @return the number of leaf nodes.
+     */
+    public long perft(int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        MoveList moves = moveLists[depth];
+        game.generateLegalMoves(moves);
+        if (depth == 1) {
+            return moves.size();
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            game.makeMove(moves.get(i));
+            nodes += perft(depth - 1);
+            game.unmakeMove();
+        }
+        return nodes;
+    }
+
+    // The reference counts start at depth 1
+    static int checkDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Perft depth must be at least 1, got " + depth);
+        }
+        return depth;
+    }
+
+    public static void main(String[] args) {
+        int depth = checkDepth(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH);
+        boolean allPassed = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+
+        for (int i = 0; i < POSITIONS.length; i++) {
+            Perft perft = new Perft(new ChessGameLogic(POSITIONS[i]), depth);
+            long start = System.nanoTime();
+            long nodes = perft.perft(depth);
+            long elapsed = System.nanoTime() - start;
+            totalNodes += nodes;
+            totalNanos += elapsed;
+
+            String status;
+            if (depth <= EXPECTED_NODES[i].length) {
+                boolean passed = nodes == EXPECTED_NODES[i][depth - 1];
+                allPassed &= passed;
+                status = passed ? "OK" : "FAILED (expected " + EXPECTED_NODES[i][depth - 1] + ")";
+            } else {
+                status = "no reference count";
+            }
+            System.out.printf("Position %d depth %d: %d nodes in %d ms, %s%n",
+                    i + 1, depth, nodes, elapsed / 1_000_000, status);
+        }
+
+        System.out.printf("Total: %d nodes, %.0f nodes/second%n", totalNodes, totalNodes * 1e9 / Math.max(totalNanos, 1));
+        if (!allPassed) {
+            System.err.println("Perft node counts do not match the reference values.");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.chess.democracy.edition.chess;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the {@link Perft} node counts of the reference positions, which pin down bugs in
+ * castling, en passant or promotion handling.
+ *
+ * <p>The default depth of 3 keeps {@code gradle test} fast; run {@code gradle test -PperftDepth=N}
+ * for a deeper check, or {@code gradle perft} for the timings.
+ */
+class PerftTest {
+
+    private static final int DEFAULT_DEPTH = 3;
+    private static final int DEPTH = Perft.checkDepth(Integer.getInteger("perft.depth", DEFAULT_DEPTH));
+
+    @Test
+    void initialPosition() {
+        assertNodes(0);
+    }
+
+    @Test
+    void kiwipete() {
+        assertNodes(1);
+    }
+
+    @Test
+    void rookEndgame() {
+        assertNodes(2);
+    }
+
+    @Test
+    void promotions() {
+        assertNodes(3);
+    }
+
+    @Test
+    void discoveredCheck() {
+        assertNodes(4);
+    }
+
+    @Test
+    void middlegame() {
+        assertNodes(5);
+    }
+
+    private static void assertNodes(int position) {
+        long[] expected = Perft.EXPECTED_NODES[position];
+        assumeTrue(DEPTH <= expected.length, "No reference count at depth " + DEPTH);
+        Perft perft = new Perft(new ChessGameLogic(Perft.POSITIONS[position]), DEPTH);
+        assertEquals(expected[DEPTH - 1], perft.perft(DEPTH), Perft.POSITIONS[position]);
+    }
+}
@@ -0,0 +1,124 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.PieceColor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chat lines and user names longer than the server relays, which would otherwise make the
+ * relayed chat frame too large for the players to accept.
+ */
+class ChatLimitTest {
+
+    private static final int GAME_ID = 1;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private GameServer server;
+    private final List<GameClient> clients = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = GameServer.getInstance("127.0.0.1", 0, ServerMode.SELECTOR);
+        // Keep voting deadlines out of the test
+        server.setTurnDuration(1, TimeUnit.DAYS);
+    }
+
+    @AfterEach
+    void stopServer() {
+        for (GameClient client : clients) {
+            client.close();
+        }
+        server.stopServer();
+    }
+
+    @Test
+    void oversizedChatIsTruncated() throws Exception {
+        Player alice = join("alice");
+        Player bob = join("bob");
+
+        alice.client.sendChat("x".repeat(65525));
+        alice.client.sendChat("still here");
+
+        assertEquals("x".repeat(FrameCodec.MAX_CHAT_BYTES), bob.nextChatFrom("alice"));
+        assertEquals("still here", bob.nextChatFrom("alice"));
+        assertTrue(bob.client.isConnected());
+    }
+
+    @Test
+    void longUserNameIsRefused() throws Exception {
+        Player player = connect();
+        player.client.hello(GAME_ID, PieceColor.WHITE, "n".repeat(FrameCodec.MAX_USER_NAME_BYTES + 1));
+
+        assertTrue(player.disconnected.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(player.joined.await(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void truncateKeepsWholeCharacters() {
+        String text = "é".repeat(10); // two bytes each in UTF-8
+
+        assertEquals("é".repeat(2), FrameCodec.truncate(text, 5));
+        assertEquals(text, FrameCodec.truncate(text, 20));
+    }
+
+    private Player join(String userName) throws Exception {
+        Player player = connect();
+        player.client.hello(GAME_ID, PieceColor.WHITE, userName);
+        assertTrue(player.joined.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), userName + " never joined");
+        return player;
+    }
+
+    private Player connect() throws IOException {
+        Player player = new Player();
+        player.client = new GameClient("127.0.0.1", server.getPort(), player);
+        clients.add(player.client);
+        player.client.start();
+        return player;
+    }
+
+    private static final class Player implements FrameHandler {
+        private final BlockingQueue<String[]> chats = new LinkedBlockingQueue<>();
+        private final CountDownLatch joined = new CountDownLatch(1);
+        private final CountDownLatch disconnected = new CountDownLatch(1);
+        private GameClient client;
+
+        @Override
+        public void onSession(long sessionToken, int sequence) {
+            joined.countDown();
+        }
+
+        @Override
+        public void onChat(String sender, String text) {
+            chats.add(new String[]{sender, text});
+        }
+
+        @Override
+        public void onDisconnected() {
+            disconnected.countDown();
+        }
+
+        // Skips the join announcements
+        String nextChatFrom(String sender) throws InterruptedException {
+            while (true) {
+                String[] chat = chats.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                assertTrue(chat != null, "No chat from " + sender);
+                if (chat[0].equals(sender)) {
+                    return chat[1];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.ChessGameLogic;
+import com.chess.democracy.edition.chess.MoveList;
+import com.chess.democracy.edition.chess.PieceColor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster test on localhost: starts several {@link ClusterNode} processes and, for one game owned
+ * by each node, connects a player to every node. It checks that chat from one player reaches all
+ * of them and that a voted move arrives everywhere with the same position key, so every game is
+ * played across the bus from every other node.
+ *
+ * <p>Run with {@code gradle clusterTest}, optionally with {@code -PclusterNodes=N}.
+ */
+public class ClusterTest {
+
+    private static final int DEFAULT_NODES = 3;
+    private static final long TURN_MILLIS = 500;
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final String MAIN_CLASS = "com.chess.democracy.edition.networking.ClusterNode";
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NODES;
+        int[] clientPorts = new int[nodes];
+        StringBuilder busAddresses = new StringBuilder();
+        for (int i = 0; i < nodes; i++) {
+            clientPorts[i] = freePort();
+            busAddresses.append(i == 0 ? "" : ",").append("127.0.0.1:").append(freePort());
+        }
+
+        List<Process> processes = new ArrayList<>();
+        boolean passed = true;
+        try {
+            for (int i = 0; i < nodes; i++) {
+                processes.add(startNode(i, "127.0.0.1:" + clientPorts[i], busAddresses.toString()));
+            }
+            // Game IDs 1..nodes give every node one game to own
+            for (int gameID = 1; gameID <= nodes; gameID++) {
+                passed &= playGame(gameID, clientPorts);
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        if (!passed) {
+            System.err.println("Cluster test failed.");
+            System.exit(1);
+        }
+        System.out.println("Cluster test passed.");
+    }
+
+    private static boolean playGame(int gameID, int[] clientPorts) throws IOException, InterruptedException {
+        int players = clientPorts.length;
+        CountDownLatch joined = new CountDownLatch(players);
+        CountDownLatch chatted = new CountDownLatch(players);
+        CountDownLatch moved = new CountDownLatch(players);
+        AtomicLong positionKey = new AtomicLong();
+        List<GameClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < players; i++) {
+                // The first player is the only white one, so its ballot decides the move
+                PieceColor team = i == 0 ? PieceColor.WHITE : PieceColor.BLACK;
+                GameClient[] self = new GameClient[1];
+                FrameHandler player = new FrameHandler() {
+                    private ChessGameLogic game;
+
+                    @Override
+                    public void onSnapshot(int turn, String fen) {
+                        if (game == null) {
+                            game = new ChessGameLogic(fen);
+                            joined.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onChat(String sender, String text) {
+                        if (text.equals("hello from node 0")) {
+                            chatted.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onTurnOpen(int turn, PieceColor votingTeam, long millisRemaining) {
+                        if (team == PieceColor.WHITE && votingTeam == team && game != null) {
+                            MoveList moves = new MoveList();
+                            game.generateLegalMoves(moves);
+                            self[0].sendVote(turn, moves.get(0));
+                        }
+                    }
+
+                    @Override
+                    public void onStateDelta(int turn, int move, long key) {
+                        // Every player must end up with the key the first one saw
+                        if (positionKey.compareAndSet(0, key) || positionKey.get() == key) {
+                            moved.countDown();
+                        }
+                    }
+                };
+                GameClient client = new GameClient("127.0.0.1", clientPorts[i], player);
+                self[0] = client;
+                client.start();
+                client.hello(gameID, team, "node" + i + "-player");
+                clients.add(client);
+            }
+
+            boolean ok = joined.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            clients.get(0).sendChat("hello from node 0");
+            ok &= chatted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            ok &= moved.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            System.out.printf("Game %d (owner node %d): joined %s, chat %s, move %s%n", gameID,
+                    Math.floorMod(gameID, players), status(joined), status(chatted), status(moved));
+            return ok;
+        } finally {
+            for (GameClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private static String status(CountDownLatch latch) {
+        return latch.getCount() == 0 ? "OK" : "FAILED (" + latch.getCount() + " players missing)";
+    }
+
+    // Starts a node with this JVM's class path and waits until it accepts players
+    private static Process startNode(int node, String clientAddress, String busAddresses) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MAIN_CLASS);
+        command.add(String.valueOf(node));
+        command.add(clientAddress);
+        command.add(busAddresses);
+        command.add(ServerMode.SELECTOR.name());
+        command.add(String.valueOf(TURN_MILLIS));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = output.readLine()) != null) {
+            System.out.println("[node " + node + "] " + line);
+            if (line.startsWith(ClusterNode.READY)) {
+                break;
+            }
+        }
+        if (line == null) {
+            throw new IOException("Cluster node " + node + " exited before it was ready");
+        }
+        // Keep relaying the node's log so its pipe never fills up
+        Thread.ofVirtual().start(() -> {
+            try {
+                String next;
+                while ((next = output.readLine()) != null) {
+                    System.out.println("[node " + node + "] " + next);
+                }
+            } catch (IOException e) {
+                // Node stopped
+            }
+        });
+        return process;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
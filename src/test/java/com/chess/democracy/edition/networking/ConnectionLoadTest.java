@@ -0,0 +1,98 @@
+package com.chess.democracy.edition.networking;
+
+import com.chess.democracy.edition.chess.PieceColor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection load test for the {@link ServerMode}s: starts the server in each mode, connects a
+ * number of idle players to it and reports the threads and memory the server needs to hold them.
+ * The players are {@link GameClient}s in the same JVM; their reader and writer threads are virtual,
+ * so they add no platform threads, but their buffers and stacks are included in the heap figures.
+ *
+ * <p>Run with {@code gradle loadTest}, optionally with {@code -PloadTestClients=N} and
+ * {@code -PloadTestMode=VIRTUAL_THREADS} to test a single mode.
+ */
+public class ConnectionLoadTest {
+
+    private static final int DEFAULT_CLIENTS = 5000;
+    // Players per game, matching two full teams
+    private static final int PLAYERS_PER_GAME = 60;
+    private static final long SETTLE_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        ServerMode[] modes = args.length > 1 ? new ServerMode[]{ServerMode.valueOf(args[1])} : ServerMode.values();
+
+        System.out.printf("%-22s %8s %8s %10s %12s %10s%n", "Mode", "Clients", "Threads", "Heap MB", "Non-heap MB", "RSS MB");
+        for (ServerMode mode : modes) {
+            run(mode, clients);
+        }
+    }
+
+    private static void run(ServerMode mode, int clients) throws IOException, InterruptedException {
+        long threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long rssBefore = residentSetKilobytes();
+
+        GameServer server = GameServer.getInstance("127.0.0.1", 0, mode);
+        // No voting rounds during the test
+        server.setTurnDuration(1, TimeUnit.DAYS);
+
+        // The bots ignore everything the server sends them
+        FrameHandler idle = new FrameHandler() {
+        };
+        List<GameClient> bots = new ArrayList<>(clients);
+        int connected = 0;
+        try {
+            for (int i = 0; i < clients; i++) {
+                GameClient bot = new GameClient("127.0.0.1", server.getPort(), idle);
+                bot.start();
+                PieceColor team = i % 2 == 0 ? PieceColor.WHITE : PieceColor.BLACK;
+                bot.hello(i / PLAYERS_PER_GAME + 1, team, "bot" + i);
+                bots.add(bot);
+                connected++;
+            }
+        } catch (IOException e) {
+            System.err.println(mode + ": stopped at " + connected + " connections: " + e.getMessage());
+        }
+
+        Thread.sleep(SETTLE_MILLIS);
+        System.gc();
+        Thread.sleep(200);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        long threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        long rss = residentSetKilobytes();
+        System.out.printf("%-22s %8d %8d %10.1f %12.1f %10s%n", mode, connected, threads,
+                heap.getUsed() / 1048576.0, nonHeap.getUsed() / 1048576.0,
+                rss < 0 ? "n/a" : String.format("+%.1f", (rss - rssBefore) / 1024.0));
+
+        for (GameClient bot : bots) {
+            bot.close();
+        }
+        server.stopServer();
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    // Virtual and platform thread stacks live outside the Java heap, so the process size is what tells them apart
+    private static long residentSetKilobytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not on Linux
+        }
+        return -1;
+    }
+}